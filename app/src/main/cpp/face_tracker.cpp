@@ -0,0 +1,176 @@
+#include "face_tracker.h"
+
+#include <algorithm>
+#include <cstdlib>
+
+#include <opencv2/imgproc.hpp>
+
+// Tracking configuration, all sizes in thumbnail pixels
+const int TRACK_MAX_ENTRIES = 64;        // regions remembered
+const int TRACK_MAX_FACES = 8;           // more faces than this are always detected
+const int TRACK_MIN_TEMPLATE = 6;        // smaller faces are too small to match reliably
+const int TRACK_REFRESH_FRAMES = 10;     // detector re-runs at least this often to correct drift
+// and at least this often in time: sparse sampling (e.g. video every 2 s) must not stretch the gap
+// in which a new face goes unseen
+const auto TRACK_REFRESH_AGE = std::chrono::milliseconds(1000);
+const float TRACK_MIN_SCORE = 0.7f;      // normalised correlation a face must keep
+const int TRACK_PIXEL_DELTA = 32;        // grey level change counted as new content
+const float TRACK_NEW_CONTENT = 0.15f;   // fraction of changed background that triggers detection
+
+FaceTrackStore& FaceTrackStore::instance() {
+    static FaceTrackStore store;
+    return store;
+}
+
+FaceTrack FaceTrackStore::acquire(int64_t id) {
+    std::lock_guard<std::mutex> lock(mutex);
+    auto it = tracks.find(id);
+    if (it == tracks.end()) {
+        return FaceTrack();
+    }
+    FaceTrack track = std::move(it->second);
+    tracks.erase(it);
+    return track;
+}
+
+void FaceTrackStore::release(int64_t id, FaceTrack&& track) {
+    std::lock_guard<std::mutex> lock(mutex);
+    track.last_used = ++clock;
+    if (tracks.size() >= static_cast<size_t>(TRACK_MAX_ENTRIES) && tracks.find(id) == tracks.end()) {
+        auto oldest = tracks.begin();
+        for (auto it = tracks.begin(); it != tracks.end(); ++it) {
+            if (it->second.last_used < oldest->second.last_used) {
+                oldest = it;
+            }
+        }
+        tracks.erase(oldest);
+    }
+    tracks[id] = std::move(track);
+}
+
+void FaceTrackStore::forget(int64_t id) {
+    std::lock_guard<std::mutex> lock(mutex);
+    tracks.erase(id);
+}
+
+void FaceTrackStore::clear() {
+    std::lock_guard<std::mutex> lock(mutex);
+    tracks.clear();
+}
+
+// True if (x, y) lies inside any of the boxes
+static bool inside_any(const std::vector<cv::Rect>& boxes, int x, int y) {
+    for (const auto& box : boxes) {
+        if (x >= box.x && x < box.x + box.width && y >= box.y && y < box.y + box.height) {
+            return true;
+        }
+    }
+    return false;
+}
+
+// Fraction of pixels outside the faces that changed, comparing thumb with prev moved by (dx, dy)
+static float changed_background(const cv::Mat& prev, const cv::Mat& thumb,
+                                const std::vector<cv::Rect>& boxes, int dx, int dy) {
+    int compared = 0;
+    int changed = 0;
+    for (int y = 0; y < thumb.rows; ++y) {
+        int py = y - dy;
+        if (py < 0 || py >= prev.rows) {
+            continue;
+        }
+        const uchar* cur_row = thumb.ptr<uchar>(y);
+        const uchar* prev_row = prev.ptr<uchar>(py);
+        for (int x = 0; x < thumb.cols; ++x) {
+            int px = x - dx;
+            if (px < 0 || px >= prev.cols || inside_any(boxes, x, y)) {
+                continue;
+            }
+            compared++;
+            if (std::abs(static_cast<int>(cur_row[x]) - static_cast<int>(prev_row[px])) > TRACK_PIXEL_DELTA) {
+                changed++;
+            }
+        }
+    }
+    // Nothing left to compare means the view moved too far to vouch for its background
+    return compared > 0 ? static_cast<float>(changed) / compared : 1.0f;
+}
+
+bool track_faces(FaceTrack& track, const cv::Mat& thumb, int region_width, int region_height) {
+    if (track.templates.empty() || track.frames_since_detect >= TRACK_REFRESH_FRAMES
+            || std::chrono::steady_clock::now() - track.detect_time >= TRACK_REFRESH_AGE
+            || track.region_width != region_width || track.region_height != region_height
+            || track.thumb.rows != thumb.rows || track.thumb.cols != thumb.cols) {
+        return false;
+    }
+
+    const cv::Rect frame(0, 0, thumb.cols, thumb.rows);
+    std::vector<cv::Rect> moved;
+    moved.reserve(track.boxes.size());
+    int shift_x = 0;
+    int shift_y = 0;
+    cv::Mat response;
+    for (size_t i = 0; i < track.templates.size(); ++i) {
+        const cv::Mat& templ = track.templates[i];
+        const cv::Rect& box = track.boxes[i];
+        // Search around the last position, half a face in every direction
+        int margin_x = std::max(4, box.width / 2);
+        int margin_y = std::max(4, box.height / 2);
+        cv::Rect window = cv::Rect(box.x - margin_x, box.y - margin_y,
+                                   box.width + 2 * margin_x, box.height + 2 * margin_y) & frame;
+        if (window.width < templ.cols || window.height < templ.rows) {
+            return false;   // face left the region
+        }
+        cv::matchTemplate(thumb(window), templ, response, cv::TM_CCOEFF_NORMED);
+        double best = 0.0;
+        cv::Point at;
+        cv::minMaxLoc(response, nullptr, &best, nullptr, &at);
+        if (best < TRACK_MIN_SCORE) {
+            return false;   // face changed or was occluded
+        }
+        cv::Rect found(window.x + at.x, window.y + at.y, box.width, box.height);
+        shift_x += found.x - box.x;
+        shift_y += found.y - box.y;
+        moved.push_back(found);
+    }
+
+    // Faces moving together approximate the motion of the whole content
+    const int faces = static_cast<int>(moved.size());
+    if (changed_background(track.thumb, thumb, moved, shift_x / faces, shift_y / faces) > TRACK_NEW_CONTENT) {
+        return false;   // something new appeared, it may hold faces of its own
+    }
+
+    track.boxes.swap(moved);
+    thumb.copyTo(track.thumb);
+    track.frames_since_detect++;
+    return true;
+}
+
+void reset_track(FaceTrack& track, const cv::Mat& thumb, int region_width, int region_height,
+                 const std::vector<cv::Rect>& boxes, const std::vector<float>& scores) {
+    track.region_width = region_width;
+    track.region_height = region_height;
+    track.frames_since_detect = 0;
+    track.detect_time = std::chrono::steady_clock::now();
+    track.templates.clear();
+    track.boxes.clear();
+    track.scores.clear();
+    thumb.copyTo(track.thumb);
+    if (boxes.size() > static_cast<size_t>(TRACK_MAX_FACES)) {
+        return;
+    }
+
+    const cv::Rect frame(0, 0, thumb.cols, thumb.rows);
+    for (size_t i = 0; i < boxes.size(); ++i) {
+        cv::Rect box = boxes[i] & frame;
+        if (box.width < TRACK_MIN_TEMPLATE || box.height < TRACK_MIN_TEMPLATE) {
+            // One untrackable face makes the whole region untrackable
+            track.templates.clear();
+            track.boxes.clear();
+            track.scores.clear();
+            return;
+        }
+        track.templates.push_back(thumb(box).clone());
+        track.boxes.push_back(box);
+        track.scores.push_back(scores[i]);
+    }
+}
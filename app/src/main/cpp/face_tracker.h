@@ -0,0 +1,71 @@
+#ifndef IMAGECLASSIFICATION_FACE_TRACKER_H
+#define IMAGECLASSIFICATION_FACE_TRACKER_H
+
+#include <chrono>
+#include <cstdint>
+#include <mutex>
+#include <unordered_map>
+#include <vector>
+#include <opencv2/core.hpp>
+
+/**
+ * Faces of one region followed between classifications. Everything is kept in thumbnail space:
+ * the region shrunk to the detector's 160x120 input and converted to grayscale, so tracking
+ * reuses the resize the detector input needs anyway.
+ */
+struct FaceTrack {
+    int region_width = 0;           // region size the faces were found at, a resize restarts the track
+    int region_height = 0;
+    cv::Mat thumb;                  // thumbnail of the last classification
+    std::vector<cv::Mat> templates; // face patches cut from the thumbnail of the last detection
+    std::vector<cv::Rect> boxes;    // current face boxes, thumbnail coordinates
+    std::vector<float> scores;      // detector confidence of each face at the last detection, not re-scored
+    int frames_since_detect = 0;
+    std::chrono::steady_clock::time_point detect_time;
+    uint64_t last_used = 0;
+};
+
+/**
+ * Tracks of all regions, keyed by an id the caller keeps stable for a view (0 = untracked).
+ * A worker takes a track out, works on it without the lock and puts it back; ids are unique
+ * within a call, so no two workers hold the same track.
+ */
+class FaceTrackStore {
+public:
+    static FaceTrackStore& instance();
+
+    // Remove and return the track of id, or an empty track
+    FaceTrack acquire(int64_t id);
+
+    // Store the track back, evicting the least recently used one when full
+    void release(int64_t id, FaceTrack&& track);
+
+    // Drop the track of id, e.g. when its region was classified without tracking
+    void forget(int64_t id);
+
+    void clear();
+
+private:
+    FaceTrackStore() = default;
+
+    std::mutex mutex;
+    std::unordered_map<int64_t, FaceTrack> tracks;
+    uint64_t clock = 0;
+};
+
+/**
+ * @brief Follow the track's faces into a new thumbnail with template matching.
+ * @return true if every face was found with enough confidence, the content around them did not
+ * change and no refresh is due (by frame count or age of the last detection); boxes then hold the
+ * new positions. false means run the detector.
+ */
+bool track_faces(FaceTrack& track, const cv::Mat& thumb, int region_width, int region_height);
+
+/**
+ * @brief Restart the track from a detector pass.
+ * @param boxes: detected faces in thumbnail coordinates, most confident first.
+ */
+void reset_track(FaceTrack& track, const cv::Mat& thumb, int region_width, int region_height,
+                 const std::vector<cv::Rect>& boxes, const std::vector<float>& scores);
+
+#endif //IMAGECLASSIFICATION_FACE_TRACKER_H
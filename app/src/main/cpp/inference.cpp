@@ -13,11 +13,23 @@
 #include <cmath>
 #include <sstream>
 #include <iomanip>
+#include <atomic>
+#include <mutex>
+#include <cstring>
+#include "inference.h"
+#include "worker_pool.h"
+#include "face_tracker.h"
 
 // Global variables for models
 static ncnn::Net face_net;
 static ncnn::Net gender_net;
-static bool models_loaded = false;
+// Loaded once under models_mutex; the flag is read lock-free on the hot path
+static std::atomic<bool> models_loaded{false};
+static std::mutex models_mutex;
+
+// Gender stage options, set from Java
+static std::atomic<bool> gender_early_exit{true};   // stop at the first female face
+static std::atomic<int> gender_max_faces{0};        // most confident faces classified per region, 0 = all
 
 // Model configurations
 const int FD_MODEL_WIDTH = 160;
@@ -27,6 +39,12 @@ const int GENDER_MODEL_HEIGHT = 32;
 const float FACE_THRESHOLD = 0.50f;
 const float GENDER_CONF_THRESH = 0.9f;
 const float IOU_THRESHOLD = 0.3f;
+const int HASH_WIDTH = 8;
+const int HASH_HEIGHT = 8;
+// Whole-frame detection
+const int FRAME_MAX_TILES = 4;              // detector passes per frame
+const float FRAME_TILE_OVERLAP = 0.15f;     // of a tile's length, so a face on a seam is whole in one tile
+const float FRAME_MIN_FACE_INSIDE = 0.5f;   // share of a face box that must lie in a view to count for it
 
 // Structure for detection results
 struct Detection {
@@ -35,11 +53,9 @@ struct Detection {
 };
 
 
-// Initialize both models
-std::string initialize_models(AAssetManager* mgr) {
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Init: Starting model initialization");
-    
-    if (models_loaded) {
+// Load both models (without taking models_mutex)
+std::string load_models_locked(AAssetManager* mgr) {
+    if (models_loaded.load()) {
         __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Init: Models already loaded");
         return "SUCCESS";
     }
@@ -52,7 +68,7 @@ std::string initialize_models(AAssetManager* mgr) {
     // Load face detection model
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Init: Loading face detection model");
     face_net.opt.use_vulkan_compute = false;
-    face_net.opt.num_threads = 1;  // Single thread for detection
+    face_net.opt.num_threads = 1;  // Parallelism comes from the worker pool, one region per worker
     
     int ret = face_net.load_param(mgr, "quant.param");
     if (ret) {
@@ -87,11 +103,24 @@ std::string initialize_models(AAssetManager* mgr) {
     }
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Init: Gender model loaded successfully");
     
-    models_loaded = true;
+    models_loaded.store(true);
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Init: All models initialized successfully");
     return "SUCCESS";
 }
 
+// Initialize both models, safe to call from several workers at once
+std::string initialize_models(AAssetManager* mgr) {
+    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Init: Starting model initialization");
+    std::lock_guard<std::mutex> lock(models_mutex);
+    std::string result = load_models_locked(mgr);
+    if (result != "SUCCESS") {
+        // Drop partially loaded nets so the next attempt starts clean
+        face_net.clear();
+        gender_net.clear();
+    }
+    return result;
+}
+
 // Fast NMS implementation with timeout protection
 std::vector<Detection> hard_nms(std::vector<Detection>& detections, float iou_threshold) {
     if (detections.empty()) return {};
@@ -210,19 +239,165 @@ inline void softmax2(float& val0, float& val1) {
     val1 = exp1 / sum;
 }
 
-bool process_image_with_gender_count(cv::Mat& src, AAssetManager* mgr) {
+// Microseconds elapsed since a steady_clock time point
+inline int32_t elapsed_us(std::chrono::steady_clock::time_point since) {
+    return static_cast<int32_t>(std::chrono::duration_cast<std::chrono::microseconds>(
+            std::chrono::steady_clock::now() - since).count());
+}
+
+/**
+ * Report the faces of a region and classify their gender (steps 4 to 6 of classify_image).
+ * @param rgb_src: the region in RGB; faces are in its coordinates, most confident first.
+ * @param start_time: start of the whole classification, for the timeout.
+ */
+static void classify_faces(const cv::Mat& rgb_src, const std::vector<Detection>& faces, WorkerScratch& scratch,
+                           RegionResult& out, std::chrono::high_resolution_clock::time_point start_time) {
+    const int max_processing_time = 10000; // 10 seconds max processing time
+    const int orig_width = rgb_src.cols;
+    const int orig_height = rgb_src.rows;
+    out.face_count = static_cast<int32_t>(faces.size());
+
+    // Report boxes of the first faces, scores are filled in as they are classified
+    out.box_count = std::min(static_cast<int>(faces.size()), RESULT_MAX_FACES);
+    for (int i = 0; i < out.box_count; ++i) {
+        out.boxes[i] = {faces[i].x1, faces[i].y1, faces[i].x2, faces[i].y2, -1.0f};
+    }
+    
+    if (faces.empty()) {
+        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 4 - No faces detected, returning true");
+        out.verdict = VERDICT_SAFE;  // No faces, so safe
+        return;
+    }
+    
+    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5 - Starting face classification");
+    auto stage_start = std::chrono::steady_clock::now();
+    out.verdict = VERDICT_SAFE;
+
+    // Step 5a: pack every valid face (most confident first) into one strip of 32x32 tiles
+    const int max_faces = gender_max_faces.load();
+    const bool early_exit = gender_early_exit.load();
+    int face_limit = static_cast<int>(faces.size());
+    if (max_faces > 0) {
+        face_limit = std::min(face_limit, max_faces);
+    }
+
+    cv::Mat& face_batch = scratch.face_batch;
+    face_batch.create(face_limit * GENDER_MODEL_HEIGHT, GENDER_MODEL_WIDTH, CV_8UC3);
+    std::vector<int>& batch_faces = scratch.batch_faces;
+    batch_faces.clear();
+    for (int i = 0; i < face_limit; ++i) {
+        const auto& face = faces[i];
+        int x1 = std::max(0, static_cast<int>(face.x1));
+        int y1 = std::max(0, static_cast<int>(face.y1));
+        int x2 = std::min(orig_width, static_cast<int>(face.x2));
+        int y2 = std::min(orig_height, static_cast<int>(face.y2));
+        
+        // Validate face crop dimensions
+        if (x2 <= x1 || y2 <= y1) {
+            __android_log_print(ANDROID_LOG_WARN, "ImageClassification", "Process: Step 5a - Invalid face crop dimensions: %d,%d,%d,%d", x1, y1, x2, y2);
+            continue;
+        }
+
+        // Resize straight into the face's tile of the strip
+        int slot = static_cast<int>(batch_faces.size());
+        cv::Mat tile = face_batch(cv::Rect(0, slot * GENDER_MODEL_HEIGHT, GENDER_MODEL_WIDTH, GENDER_MODEL_HEIGHT));
+        cv::resize(rgb_src(cv::Rect(x1, y1, x2 - x1, y2 - y1)), tile, cv::Size(GENDER_MODEL_WIDTH, GENDER_MODEL_HEIGHT));
+        batch_faces.push_back(i);
+    }
+    const int batch_size = static_cast<int>(batch_faces.size());
+    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5a - Packed %d of %zu faces", batch_size, faces.size());
+    if (batch_size == 0) {
+        out.gender_us = elapsed_us(stage_start);
+        return;
+    }
+
+    // Step 5b: one conversion + normalisation for the whole strip
+    ncnn::Mat gender_batch = ncnn::Mat::from_pixels(face_batch.data, ncnn::Mat::PIXEL_BGR2RGB,
+                                                    GENDER_MODEL_WIDTH, batch_size * GENDER_MODEL_HEIGHT,
+                                                    &scratch.blob_allocator);
+    const float gender_norm[3] = {1.0f / 255.0f, 1.0f / 255.0f, 1.0f / 255.0f};
+    const float gender_mean[3] = {0.0f, 0.0f, 0.0f};
+    gender_batch.substract_mean_normalize(gender_mean, gender_norm);
+
+    // Step 5c: ncnn has no batch axis, so run the net per face on a reused, preallocated input
+    ncnn::Mat gender_input(GENDER_MODEL_WIDTH, GENDER_MODEL_HEIGHT, 3, 4u, &scratch.blob_allocator);
+    const size_t tile_floats = GENDER_MODEL_WIDTH * GENDER_MODEL_HEIGHT;
+    for (int b = 0; b < batch_size; ++b) {
+        // Check timeout periodically
+        auto current_time = std::chrono::high_resolution_clock::now();
+        auto elapsed = std::chrono::duration_cast<std::chrono::milliseconds>(current_time - start_time);
+        if (elapsed.count() > max_processing_time) {
+            __android_log_print(ANDROID_LOG_ERROR, "ImageClassification", "Process: Step 5c - Timeout during face processing");
+            break;  // Keep the verdict so far to avoid blocking
+        }
+
+        for (int c = 0; c < 3; ++c) {
+            const float* src_tile = static_cast<const float*>(gender_batch.channel(c)) + b * tile_floats;
+            std::memcpy(static_cast<float*>(gender_input.channel(c)), src_tile, tile_floats * sizeof(float));
+        }
+
+        ncnn::Extractor gender_ex = gender_net.create_extractor();
+        gender_ex.set_light_mode(true);
+        gender_ex.set_blob_allocator(&scratch.blob_allocator);
+        gender_ex.set_workspace_allocator(&scratch.workspace_allocator);
+        gender_ex.input("in0", gender_input);
+
+        ncnn::Mat gender_output;
+        gender_ex.extract("out0", gender_output);
+
+        int i = batch_faces[b];
+        if (gender_output.w >= 2) {
+            float female_score = gender_output[0];
+            float male_score = gender_output[1];
+            
+            // Apply softmax
+            softmax2(female_score, male_score);
+            
+            __android_log_print(ANDROID_LOG_INFO, "ImageClassification",
+                              "Process: Step 5d - Face %d: female=%.3f, male=%.3f", i, female_score, male_score);
+
+            out.max_female_score = std::max(out.max_female_score, female_score);
+            if (i < out.box_count) {
+                out.boxes[i].female_score = female_score;
+            }
+            
+            if (female_score >= male_score) {
+                out.verdict = VERDICT_BLOCKED;  // Female detected
+                if (early_exit) {
+                    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5e - Female detected, stopping early");
+                    break;
+                }
+            }
+        } else {
+            __android_log_print(ANDROID_LOG_WARN, "ImageClassification",
+                              "Process: Step 5f - Invalid gender output for face %d: width=%d", i, gender_output.w);
+        }
+    }
+    out.gender_us = elapsed_us(stage_start);
+
+    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 6 - Verdict %d, %d faces, max female score %.3f",
+                       out.verdict, out.face_count, out.max_female_score);
+}
+
+void classify_image(cv::Mat& src, AAssetManager* mgr, WorkerScratch& scratch, RegionResult& out, FaceTrack* track) {
     // Add timeout protection
     auto start_time = std::chrono::high_resolution_clock::now();
+    auto total_start = std::chrono::steady_clock::now();
     const int max_processing_time = 10000; // 10 seconds max processing time
+
+    out = RegionResult();
+    out.verdict = VERDICT_ERROR;
+    out.max_female_score = 0.0f;
     
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 1 - Checking models loaded status");
     // Initialize models if needed
-    if (!models_loaded) {
+    if (!models_loaded.load()) {
         __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 1a - Models not loaded, initializing...");
         std::string init_result = initialize_models(mgr);
         if (init_result != "SUCCESS") {
             __android_log_print(ANDROID_LOG_ERROR, "ImageClassification", "Process: Step 1a - Model initialization failed: %s", init_result.c_str());
-            return false;  // Early return for failure
+            out.total_us = elapsed_us(total_start);
+            return;  // Early return for failure
         }
         __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 1a - Models initialized successfully");
     } else {
@@ -234,12 +409,14 @@ bool process_image_with_gender_count(cv::Mat& src, AAssetManager* mgr) {
     auto elapsed = std::chrono::duration_cast<std::chrono::milliseconds>(current_time - start_time);
     if (elapsed.count() > max_processing_time) {
         __android_log_print(ANDROID_LOG_ERROR, "ImageClassification", "Process: Step 1b - Timeout during model initialization");
-        return false;
+        out.total_us = elapsed_us(total_start);
+        return;
     }
     
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 2 - Converting image to RGB");
+    auto stage_start = std::chrono::steady_clock::now();
     // Convert to RGB
-    cv::Mat rgb_src;
+    cv::Mat& rgb_src = scratch.rgb;
     if (src.channels() == 3) {
         cv::cvtColor(src, rgb_src, cv::COLOR_BGR2RGB);
         __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 2a - Converted 3-channel BGR to RGB");
@@ -248,7 +425,8 @@ bool process_image_with_gender_count(cv::Mat& src, AAssetManager* mgr) {
         __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 2a - Converted 4-channel BGRA to RGB");
     } else {
         __android_log_print(ANDROID_LOG_ERROR, "ImageClassification", "Process: Step 2a - Unsupported image format: %d channels", src.channels());
-        return false;  // Unsupported format
+        out.total_us = elapsed_us(total_start);
+        return;  // Unsupported format
     }
     
     int orig_width = rgb_src.cols;
@@ -258,123 +436,93 @@ bool process_image_with_gender_count(cv::Mat& src, AAssetManager* mgr) {
     
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3 - Starting face detection");
     // Face detection
-    cv::Mat resized_fd;
+    cv::Mat& resized_fd = scratch.resized_fd;
     cv::resize(rgb_src, resized_fd, cv::Size(FD_MODEL_WIDTH, FD_MODEL_HEIGHT));
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3a - Resized image for face detection");
-    
-    ncnn::Mat fd_input = ncnn::Mat::from_pixels(resized_fd.data, ncnn::Mat::PIXEL_RGB, FD_MODEL_WIDTH, FD_MODEL_HEIGHT);
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3b - Created ncnn input tensor");
-    
-    const float mean_vals[3] = {127.0f, 127.0f, 127.0f};
-    const float norm_vals[3] = {1.0f/160.0f, 1.0f/160.0f, 1.0f/160.0f};
-    fd_input.substract_mean_normalize(mean_vals, norm_vals);
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3c - Normalized input tensor");
-    
-    ncnn::Extractor face_ex = face_net.create_extractor();
-    face_ex.set_light_mode(true);
-    face_ex.input("in0", fd_input);
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3d - Created face extractor and set input");
-    
-    ncnn::Mat conf_mat, box_mat;
-    face_ex.extract("out0", conf_mat);
-    face_ex.extract("out1", box_mat);
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3e - Extracted face detection outputs");
-    
-    // Check timeout before processing face outputs
-    auto face_process_time = std::chrono::high_resolution_clock::now();
-    auto face_elapsed = std::chrono::duration_cast<std::chrono::milliseconds>(face_process_time - start_time);
-    if (face_elapsed.count() > 7000) {  // 7 seconds timeout before face processing
-        __android_log_print(ANDROID_LOG_ERROR, "ImageClassification", "Process: Step 3e - Timeout before face processing, elapsed: %lld ms",
-                           static_cast<long long>(face_elapsed.count()));
-        return true;
-    }
-    
-    std::vector<Detection> faces = process_face_output(conf_mat, box_mat, orig_width, orig_height);
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3f - Processed face outputs, detected %zu faces", faces.size());
-    
-    if (faces.empty()) {
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 4 - No faces detected, returning true");
-        return true;  // No faces, so return true
-    }
-    
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5 - Starting face classification");
-    // Process each detected face
-    for (size_t i = 0; i < faces.size(); ++i) {
-        // Check timeout periodically
-        auto current_time = std::chrono::high_resolution_clock::now();
-        auto elapsed = std::chrono::duration_cast<std::chrono::milliseconds>(current_time - start_time);
-        if (elapsed.count() > max_processing_time) {
-            __android_log_print(ANDROID_LOG_ERROR, "ImageClassification", "Process: Step 5a - Timeout during face processing");
-            return true;  // Return true to avoid blocking
+
+    // Step 3b: follow the faces of an earlier detection on the grey detector input if possible
+    std::vector<Detection> faces;
+    bool tracked = false;
+    int32_t track_us = 0;
+    if (track != nullptr) {
+        auto track_start = std::chrono::steady_clock::now();
+        cv::cvtColor(resized_fd, scratch.track_thumb, cv::COLOR_RGB2GRAY);
+        tracked = track_faces(*track, scratch.track_thumb, orig_width, orig_height);
+        if (tracked) {
+            const float sx = static_cast<float>(orig_width) / FD_MODEL_WIDTH;
+            const float sy = static_cast<float>(orig_height) / FD_MODEL_HEIGHT;
+            for (size_t i = 0; i < track->boxes.size(); ++i) {
+                const cv::Rect& box = track->boxes[i];
+                faces.push_back({box.x * sx, box.y * sy, (box.x + box.width) * sx, (box.y + box.height) * sy,
+                                 track->scores[i]});
+            }
         }
-        
-        const auto& face = faces[i];
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5b - Processing face %zu at (%.1f,%.1f)-(%.1f,%.1f)",
-                           i, face.x1, face.y1, face.x2, face.y2);
-        
-        int x1 = std::max(0, static_cast<int>(face.x1));
-        int y1 = std::max(0, static_cast<int>(face.y1));
-        int x2 = std::min(orig_width, static_cast<int>(face.x2));
-        int y2 = std::min(orig_height, static_cast<int>(face.y2));
-        
-        // Validate face crop dimensions
-        if (x2 <= x1 || y2 <= y1) {
-            __android_log_print(ANDROID_LOG_WARN, "ImageClassification", "Process: Step 5c - Invalid face crop dimensions: %d,%d,%d,%d", x1, y1, x2, y2);
-            continue;
+        track_us = elapsed_us(track_start);
+    }
+
+    if (tracked) {
+        out.preprocess_us = elapsed_us(stage_start) - track_us;
+        out.detect_us = track_us;
+        out.face_source = FACE_SOURCE_TRACKER;
+        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3b - Tracked %zu faces, detector skipped", faces.size());
+    } else {
+        ncnn::Mat fd_input = ncnn::Mat::from_pixels(resized_fd.data, ncnn::Mat::PIXEL_RGB, FD_MODEL_WIDTH, FD_MODEL_HEIGHT,
+                                                    &scratch.blob_allocator);
+        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3c - Created ncnn input tensor");
+
+        const float mean_vals[3] = {127.0f, 127.0f, 127.0f};
+        const float norm_vals[3] = {1.0f/160.0f, 1.0f/160.0f, 1.0f/160.0f};
+        fd_input.substract_mean_normalize(mean_vals, norm_vals);
+        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3d - Normalized input tensor");
+        out.preprocess_us = elapsed_us(stage_start) - track_us;
+
+        stage_start = std::chrono::steady_clock::now();
+        ncnn::Extractor face_ex = face_net.create_extractor();
+        face_ex.set_light_mode(true);
+        face_ex.set_blob_allocator(&scratch.blob_allocator);
+        face_ex.set_workspace_allocator(&scratch.workspace_allocator);
+        face_ex.input("in0", fd_input);
+        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3e - Created face extractor and set input");
+
+        ncnn::Mat conf_mat, box_mat;
+        face_ex.extract("out0", conf_mat);
+        face_ex.extract("out1", box_mat);
+        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3f - Extracted face detection outputs");
+
+        // Check timeout before processing face outputs
+        auto face_process_time = std::chrono::high_resolution_clock::now();
+        auto face_elapsed = std::chrono::duration_cast<std::chrono::milliseconds>(face_process_time - start_time);
+        if (face_elapsed.count() > 7000) {  // 7 seconds timeout before face processing
+            __android_log_print(ANDROID_LOG_ERROR, "ImageClassification", "Process: Step 3f - Timeout before face processing, elapsed: %lld ms",
+                               static_cast<long long>(face_elapsed.count()));
+            out.verdict = VERDICT_SAFE;
+            out.detect_us = elapsed_us(stage_start) + track_us;
+            out.total_us = elapsed_us(total_start);
+            return;
         }
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5d - Valid face crop: %dx%d", x2-x1, y2-y1);
-        
-        cv::Mat face_crop = rgb_src(cv::Rect(x1, y1, x2 - x1, y2 - y1));
-        cv::Mat face_resized;
-        cv::resize(face_crop, face_resized, cv::Size(GENDER_MODEL_WIDTH, GENDER_MODEL_HEIGHT));
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5e - Resized face for gender classification");
-        
-        ncnn::Mat gender_input = ncnn::Mat::from_pixels(face_resized.data, ncnn::Mat::PIXEL_BGR2RGB, GENDER_MODEL_WIDTH, GENDER_MODEL_HEIGHT);
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5f - Created gender input tensor");
-        
-        const float gender_norm[3] = {1.0f / 255.0f, 1.0f / 255.0f, 1.0f / 255.0f};
-        const float gender_mean[3] = {0.0f, 0.0f, 0.0f};
-        gender_input.substract_mean_normalize(gender_mean, gender_norm);
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5g - Normalized gender input tensor");
-        
-        ncnn::Mat gender_input_chw;
-        ncnn::convert_packing(gender_input, gender_input_chw, 1);
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5h - Converted gender input to CHW format");
-        
-        ncnn::Extractor gender_ex = gender_net.create_extractor();
-        gender_ex.set_light_mode(true);
-        gender_ex.input("in0", gender_input_chw);
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5i - Created gender extractor and set input");
-        
-        ncnn::Mat gender_output;
-        gender_ex.extract("out0", gender_output);
-        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5j - Extracted gender output, width: %d", gender_output.w);
-        
-        if (gender_output.w >= 2) {
-            float female_score = gender_output[0];
-            float male_score = gender_output[1];
-            
-            // Apply softmax
-            float sum = std::exp(female_score) + std::exp(male_score);
-            female_score = std::exp(female_score) / sum;
-            male_score = std::exp(male_score) / sum;
-            
-            __android_log_print(ANDROID_LOG_INFO, "ImageClassification",
-                              "Process: Step 5k - Face %zu: female=%.3f, male=%.3f", i, female_score, male_score);
-            
-            if (female_score >= male_score) {
-                __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 5l - Female detected, returning false");
-                return false;  // Female detected, stop and return false
+
+        faces = process_face_output(conf_mat, box_mat, orig_width, orig_height);
+        out.detect_us = elapsed_us(stage_start) + track_us;
+        out.face_source = FACE_SOURCE_DETECTOR;
+        __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 3g - Processed face outputs, detected %zu faces", faces.size());
+
+        if (track != nullptr) {
+            // Restart the track from these faces, in the detector input's coordinates
+            const float sx = static_cast<float>(FD_MODEL_WIDTH) / orig_width;
+            const float sy = static_cast<float>(FD_MODEL_HEIGHT) / orig_height;
+            std::vector<cv::Rect> boxes;
+            std::vector<float> scores;
+            for (const auto& face : faces) {
+                int x1 = static_cast<int>(face.x1 * sx);
+                int y1 = static_cast<int>(face.y1 * sy);
+                boxes.push_back(cv::Rect(x1, y1, static_cast<int>(face.x2 * sx) - x1, static_cast<int>(face.y2 * sy) - y1));
+                scores.push_back(face.score);
             }
-            // If male, continue to next face
-        } else {
-            __android_log_print(ANDROID_LOG_WARN, "ImageClassification",
-                              "Process: Step 5m - Invalid gender output for face %zu: width=%d", i, gender_output.w);
+            reset_track(*track, scratch.track_thumb, orig_width, orig_height, boxes, scores);
         }
     }
-    
-    __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Process: Step 6 - No females detected, returning true");
-    return true;  // No females detected
+    classify_faces(rgb_src, faces, scratch, out, start_time);
+    out.total_us = elapsed_us(total_start);
 }
 
 // Bitmap to Mat conversion
@@ -426,6 +574,461 @@ void Bitmap2Mat(JNIEnv* env, jobject bitmap, cv::Mat& dst, jboolean needUnPremul
     AndroidBitmap_unlockPixels(env, bitmap);
 }
 
+// 64-bit difference hash: 9x8 grayscale thumbnail, one bit per horizontal gradient
+uint64_t difference_hash(const cv::Mat& rgba) {
+    cv::Mat small, gray;
+    cv::resize(rgba, small, cv::Size(HASH_WIDTH + 1, HASH_HEIGHT), 0, 0, cv::INTER_AREA);
+    cv::cvtColor(small, gray, cv::COLOR_RGBA2GRAY);
+
+    uint64_t hash = 0;
+    for (int y = 0; y < HASH_HEIGHT; ++y) {
+        const uchar* row = gray.ptr<uchar>(y);
+        for (int x = 0; x < HASH_WIDTH; ++x) {
+            hash = (hash << 1) | (row[x] > row[x + 1] ? 1u : 0u);
+        }
+    }
+    return hash;
+}
+
+/**
+ * Wrap an ImageReader plane (RGBA_8888) as a cv::Mat without copying.
+ * The Mat is only valid while the Java side keeps the Image open.
+ */
+bool Plane2Mat(JNIEnv* env, jobject buffer, jint width, jint height,
+               jint rowStride, jint pixelStride, cv::Mat& dst) {
+    if (buffer == nullptr || width <= 0 || height <= 0) {
+        __android_log_print(ANDROID_LOG_ERROR, "Plane2Mat", "Error: invalid frame buffer");
+        return false;
+    }
+    if (pixelStride != 4 || rowStride < width * pixelStride) {
+        __android_log_print(ANDROID_LOG_ERROR, "Plane2Mat", "Unsupported strides: pixel=%d, row=%d", pixelStride, rowStride);
+        return false;
+    }
+
+    void* pixels = env->GetDirectBufferAddress(buffer);
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    if (pixels == nullptr || capacity < static_cast<jlong>(rowStride) * (height - 1) + width * pixelStride) {
+        __android_log_print(ANDROID_LOG_ERROR, "Plane2Mat", "Error: buffer is not direct or too small");
+        return false;
+    }
+
+    dst = cv::Mat(height, width, CV_8UC4, pixels, static_cast<size_t>(rowStride));
+    return true;
+}
+
+// Clamp a rect to the frame, returns false if nothing is left
+bool clamp_region(const cv::Mat& frame, jint left, jint top, jint right, jint bottom, cv::Rect& out) {
+    int x1 = std::max(0, static_cast<int>(left));
+    int y1 = std::max(0, static_cast<int>(top));
+    int x2 = std::min(frame.cols, static_cast<int>(right));
+    int y2 = std::min(frame.rows, static_cast<int>(bottom));
+    if (x2 <= x1 || y2 <= y1) {
+        return false;
+    }
+    out = cv::Rect(x1, y1, x2 - x1, y2 - y1);
+    return true;
+}
+
+// Copy the flattened [left, top, right, bottom] rect array in one JNI call
+bool read_rects(JNIEnv* env, jintArray rects, jint count, std::vector<jint>& out) {
+    if (rects == nullptr || count <= 0 || env->GetArrayLength(rects) < count * 4) {
+        __android_log_print(ANDROID_LOG_ERROR, "ReadRects", "Error: rect array too small for %d regions", count);
+        return false;
+    }
+    out.resize(count * 4);
+    env->GetIntArrayRegion(rects, 0, count * 4, out.data());
+    return true;
+}
+
+/**
+ * Perceptual hashes of several regions of the captured frame, read in place from the ImageReader plane.
+ * A hash of 0 means the region is empty or has no gradients (flat colour), so callers can skip caching.
+ * @param rects: flattened [left, top, right, bottom] per region.
+ * @param hashesOut: receives one hash per region.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_ComputeRegionHashes(
+    JNIEnv* env,
+    jobject,
+    jobject frameBuffer,
+    jint width, jint height, jint rowStride, jint pixelStride,
+    jintArray rects, jint count,
+    jlongArray hashesOut) {
+
+    std::vector<jint> r;
+    if (!read_rects(env, rects, count, r) || hashesOut == nullptr || env->GetArrayLength(hashesOut) < count) {
+        return;
+    }
+
+    std::vector<jlong> hashes(count, 0);
+    cv::Mat frame;
+    if (Plane2Mat(env, frameBuffer, width, height, rowStride, pixelStride, frame)) {
+        for (int i = 0; i < count; ++i) {
+            cv::Rect region;
+            if (clamp_region(frame, r[i * 4], r[i * 4 + 1], r[i * 4 + 2], r[i * 4 + 3], region)) {
+                hashes[i] = static_cast<jlong>(difference_hash(frame(region)));
+            }
+        }
+    }
+    env->SetLongArrayRegion(hashesOut, 0, count, hashes.data());
+}
+
+// 64-bit multiply-xorshift mixing, enough to tell tiles apart; not a perceptual hash
+static inline uint64_t mix_word(uint64_t h, uint64_t word) {
+    h ^= word;
+    h *= 0x9E3779B97F4A7C15ULL;
+    return h ^ (h >> 29);
+}
+
+/**
+ * Exact hashes of every tileSize x tileSize tile of the captured frame, row-major, for change
+ * detection between frames. Each band of tile rows is one pool job; a band reads its rows once,
+ * eight bytes at a time. Edge tiles cover what is left of the frame.
+ * @param hashesOut: receives ceil(width / tileSize) * ceil(height / tileSize) hashes.
+ * @return false if nothing was written, hashesOut then still holds an older frame's hashes.
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_ComputeTileHashes(
+    JNIEnv* env,
+    jobject,
+    jobject frameBuffer,
+    jint width, jint height, jint rowStride, jint pixelStride,
+    jint tileSize,
+    jlongArray hashesOut) {
+
+    if (tileSize <= 0 || hashesOut == nullptr) {
+        return JNI_FALSE;
+    }
+    const int cols = (width + tileSize - 1) / tileSize;
+    const int rows = (height + tileSize - 1) / tileSize;
+    if (env->GetArrayLength(hashesOut) < cols * rows) {
+        __android_log_print(ANDROID_LOG_ERROR, "TileHashes", "Error: hash array too small for %dx%d tiles", cols, rows);
+        return JNI_FALSE;
+    }
+
+    cv::Mat frame;
+    if (!Plane2Mat(env, frameBuffer, width, height, rowStride, pixelStride, frame)) {
+        return JNI_FALSE;
+    }
+    std::vector<jlong> hashes(static_cast<size_t>(cols) * rows, 0);
+    InferencePool::instance().run(rows, [&](int band, WorkerScratch&) {
+        uint64_t* h = reinterpret_cast<uint64_t*>(hashes.data()) + static_cast<size_t>(band) * cols;
+        for (int c = 0; c < cols; ++c) {
+            h[c] = 0xCBF29CE484222325ULL ^ static_cast<uint64_t>(band * cols + c);
+        }
+        const int y_end = std::min(height, (band + 1) * tileSize);
+        const size_t tile_bytes = static_cast<size_t>(tileSize) * 4;
+        for (int y = band * tileSize; y < y_end; ++y) {
+            const uchar* row = frame.ptr<uchar>(y);
+            for (int c = 0; c < cols; ++c) {
+                const uchar* p = row + c * tile_bytes;
+                size_t bytes = std::min(tile_bytes, static_cast<size_t>(width) * 4 - c * tile_bytes);
+                uint64_t acc = h[c];
+                size_t i = 0;
+                for (; i + 8 <= bytes; i += 8) {
+                    uint64_t word;
+                    std::memcpy(&word, p + i, 8);
+                    acc = mix_word(acc, word);
+                }
+                for (; i < bytes; i += 4) {
+                    uint32_t pixel;
+                    std::memcpy(&pixel, p + i, 4);
+                    acc = mix_word(acc, pixel);
+                }
+                h[c] = acc;
+            }
+        }
+    });
+    env->SetLongArrayRegion(hashesOut, 0, cols * rows, hashes.data());
+    return JNI_TRUE;
+}
+
+/**
+ * Classify several regions of one captured frame in a single JNI crossing.
+ * Crops are views into the plane; the only copy is the colour conversion inside inference.
+ * @param rects: flattened [left, top, right, bottom] per region.
+ * @param trackIds: optional stable id per region (0 = none); faces of a tracked region are followed
+ * from its last classification and the detector only re-runs when tracking fails.
+ * @param resultsBuffer: caller-owned direct ByteBuffer (native order) receiving one RegionResult per region.
+ */
+// Shared body of ClassifyRegions / ClassifyRegionsDownscaled; divisor > 1 shrinks each region first.
+// Returns false if the records could not be written, callers must not read them then.
+static bool classify_regions(JNIEnv* env, jobject frameBuffer,
+                             jint width, jint height, jint rowStride, jint pixelStride,
+                             jintArray rects, jint count, jlongArray trackIds,
+                             jobject resultsBuffer, jobject assetManager, int divisor) {
+    auto* results = static_cast<uint8_t*>(resultsBuffer != nullptr ? env->GetDirectBufferAddress(resultsBuffer) : nullptr);
+    if (count <= 0 || results == nullptr
+            || env->GetDirectBufferCapacity(resultsBuffer) < static_cast<jlong>(count * sizeof(RegionResult))) {
+        __android_log_print(ANDROID_LOG_ERROR, "ClassifyRegions", "Error: results buffer is not direct or too small");
+        return false;
+    }
+    // Every record starts as an error so no early exit leaves a previous call's verdicts behind
+    RegionResult error_result = RegionResult();
+    error_result.verdict = VERDICT_ERROR;
+    for (int i = 0; i < count; ++i) {
+        std::memcpy(results + i * sizeof(RegionResult), &error_result, sizeof(RegionResult));
+    }
+
+    std::vector<jint> r;
+    if (!read_rects(env, rects, count, r)) {
+        return false;
+    }
+    std::vector<jlong> ids;
+    if (trackIds != nullptr && env->GetArrayLength(trackIds) >= count) {
+        ids.resize(count);
+        env->GetLongArrayRegion(trackIds, 0, count, ids.data());
+    }
+
+    cv::Mat frame;
+    AAssetManager* mgr = AAssetManager_fromJava(env, assetManager);
+    bool frame_ok = mgr != nullptr && Plane2Mat(env, frameBuffer, width, height, rowStride, pixelStride, frame);
+    if (mgr == nullptr) {
+        __android_log_print(ANDROID_LOG_ERROR, "ClassifyRegions", "Error: Asset manager is null");
+    }
+
+    // Regions are independent: spread them over the pool, each writing its own record
+    auto start_time = std::chrono::high_resolution_clock::now();
+    InferencePool::instance().run(count, [&](int i, WorkerScratch& scratch) {
+        RegionResult result;
+        cv::Rect region;
+        if (frame_ok && clamp_region(frame, r[i * 4], r[i * 4 + 1], r[i * 4 + 2], r[i * 4 + 3], region)) {
+            cv::Mat crop = frame(region);
+            if (divisor > 1) {
+                // Approximates what the compositor hands us when capturing at 1/divisor resolution
+                cv::Size small(std::max(1, region.width / divisor), std::max(1, region.height / divisor));
+                cv::resize(crop, scratch.downscaled, small, 0, 0, cv::INTER_AREA);
+                classify_image(scratch.downscaled, mgr, scratch, result);
+            } else if (!ids.empty() && ids[i] != 0) {
+                FaceTrack track = FaceTrackStore::instance().acquire(ids[i]);
+                classify_image(crop, mgr, scratch, result, &track);
+                FaceTrackStore::instance().release(ids[i], std::move(track));
+            } else {
+                classify_image(crop, mgr, scratch, result);
+            }
+        } else {
+            result = RegionResult();
+            result.verdict = VERDICT_ERROR;
+        }
+        std::memcpy(results + i * sizeof(RegionResult), &result, sizeof(RegionResult));
+    });
+    auto duration = std::chrono::duration_cast<std::chrono::milliseconds>(
+            std::chrono::high_resolution_clock::now() - start_time);
+    __android_log_print(ANDROID_LOG_INFO, "ClassifyRegions", "Classified %d regions (1/%d) in %lld ms",
+                       count, divisor, static_cast<long long>(duration.count()));
+    return true;
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_ClassifyRegions(
+    JNIEnv* env,
+    jobject,
+    jobject frameBuffer,
+    jint width, jint height, jint rowStride, jint pixelStride,
+    jintArray rects, jint count,
+    jlongArray trackIds,
+    jobject resultsBuffer,
+    jobject assetManager) {
+    return classify_regions(env, frameBuffer, width, height, rowStride, pixelStride, rects, count, trackIds,
+                            resultsBuffer, assetManager, 1) ? JNI_TRUE : JNI_FALSE;
+}
+
+/**
+ * @brief Same as ClassifyRegions, but each region is first shrunk by scaleDivisor.
+ * Used to measure how verdicts hold up at reduced capture resolutions on a full-resolution frame.
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_ClassifyRegionsDownscaled(
+    JNIEnv* env,
+    jobject,
+    jobject frameBuffer,
+    jint width, jint height, jint rowStride, jint pixelStride,
+    jintArray rects, jint count,
+    jobject resultsBuffer,
+    jobject assetManager,
+    jint scaleDivisor) {
+    return classify_regions(env, frameBuffer, width, height, rowStride, pixelStride, rects, count, nullptr,
+                            resultsBuffer, assetManager, std::max(1, static_cast<int>(scaleDivisor))) ? JNI_TRUE : JNI_FALSE;
+}
+
+// Run face_net on one tile of the frame, boxes in tile coordinates
+static std::vector<Detection> detect_tile_faces(const cv::Mat& tile, WorkerScratch& scratch) {
+    cv::cvtColor(tile, scratch.rgb, cv::COLOR_BGRA2RGB);
+    cv::resize(scratch.rgb, scratch.resized_fd, cv::Size(FD_MODEL_WIDTH, FD_MODEL_HEIGHT), 0, 0, cv::INTER_AREA);
+    ncnn::Mat fd_input = ncnn::Mat::from_pixels(scratch.resized_fd.data, ncnn::Mat::PIXEL_RGB, FD_MODEL_WIDTH, FD_MODEL_HEIGHT,
+                                                &scratch.blob_allocator);
+    const float mean_vals[3] = {127.0f, 127.0f, 127.0f};
+    const float norm_vals[3] = {1.0f/160.0f, 1.0f/160.0f, 1.0f/160.0f};
+    fd_input.substract_mean_normalize(mean_vals, norm_vals);
+
+    ncnn::Extractor face_ex = face_net.create_extractor();
+    face_ex.set_light_mode(true);
+    face_ex.set_blob_allocator(&scratch.blob_allocator);
+    face_ex.set_workspace_allocator(&scratch.workspace_allocator);
+    face_ex.input("in0", fd_input);
+    ncnn::Mat conf_mat, box_mat;
+    face_ex.extract("out0", conf_mat);
+    face_ex.extract("out1", box_mat);
+    return process_face_output(conf_mat, box_mat, tile.cols, tile.rows);
+}
+
+// Split area into at most FRAME_MAX_TILES overlapping tiles of roughly the detector's aspect ratio
+static std::vector<cv::Rect> frame_tiles(const cv::Rect& area) {
+    const float aspect = static_cast<float>(FD_MODEL_WIDTH) / FD_MODEL_HEIGHT;
+    const bool vertical = area.height * aspect > area.width;
+    const int length = vertical ? area.height : area.width;
+    const float tile_length = vertical ? area.width / aspect : area.height * aspect;
+    int n = static_cast<int>(std::lround(length / std::max(1.0f, tile_length)));
+    n = std::max(1, std::min(FRAME_MAX_TILES, n));
+
+    std::vector<cv::Rect> tiles;
+    const int step = length / n;
+    const int overlap = static_cast<int>(step * FRAME_TILE_OVERLAP);
+    for (int t = 0; t < n; ++t) {
+        int start = std::max(0, t * step - overlap);
+        int end = t == n - 1 ? length : std::min(length, (t + 1) * step + overlap);
+        tiles.push_back(vertical ? cv::Rect(area.x, area.y + start, area.width, end - start)
+                                 : cv::Rect(area.x + start, area.y, end - start, area.height));
+    }
+    return tiles;
+}
+
+/**
+ * Whole-frame mode: detect faces once over the area covering all regions, in a few large tiles
+ * instead of once per region, then hand each region the faces lying mostly inside it and
+ * classify the gender of those only. Faces outside every region are never classified.
+ * Per-region detect_us is the shared detection time divided by the region count.
+ * @param rects: flattened [left, top, right, bottom] per region, the views worth classifying.
+ * @param trackIds: optional track id per region (0 = none); these tracks are dropped, as their
+ * templates would be stale by the next per-region call.
+ * @param resultsBuffer: caller-owned direct ByteBuffer (native order) receiving one RegionResult per region.
+ * @return number of detector passes, 0 if nothing could be classified.
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_ClassifyFrame(
+    JNIEnv* env,
+    jobject,
+    jobject frameBuffer,
+    jint width, jint height, jint rowStride, jint pixelStride,
+    jintArray rects, jint count,
+    jlongArray trackIds,
+    jobject resultsBuffer,
+    jobject assetManager) {
+
+    std::vector<jint> r;
+    if (!read_rects(env, rects, count, r)) {
+        return 0;
+    }
+    if (trackIds != nullptr && env->GetArrayLength(trackIds) >= count) {
+        std::vector<jlong> ids(count);
+        env->GetLongArrayRegion(trackIds, 0, count, ids.data());
+        for (jlong id : ids) {
+            if (id != 0) {
+                FaceTrackStore::instance().forget(id);
+            }
+        }
+    }
+    auto* results = static_cast<uint8_t*>(resultsBuffer != nullptr ? env->GetDirectBufferAddress(resultsBuffer) : nullptr);
+    if (results == nullptr || env->GetDirectBufferCapacity(resultsBuffer) < static_cast<jlong>(count * sizeof(RegionResult))) {
+        __android_log_print(ANDROID_LOG_ERROR, "ClassifyFrame", "Error: results buffer is not direct or too small");
+        return 0;
+    }
+    RegionResult error_result = RegionResult();
+    error_result.verdict = VERDICT_ERROR;
+    for (int i = 0; i < count; ++i) {
+        std::memcpy(results + i * sizeof(RegionResult), &error_result, sizeof(RegionResult));
+    }
+
+    cv::Mat frame;
+    AAssetManager* mgr = AAssetManager_fromJava(env, assetManager);
+    if (mgr == nullptr || !Plane2Mat(env, frameBuffer, width, height, rowStride, pixelStride, frame)) {
+        __android_log_print(ANDROID_LOG_ERROR, "ClassifyFrame", "Error: no asset manager or frame");
+        return 0;
+    }
+    if (!models_loaded.load() && initialize_models(mgr) != "SUCCESS") {
+        return 0;
+    }
+
+    auto start_time = std::chrono::high_resolution_clock::now();
+    auto detect_start = std::chrono::steady_clock::now();
+    std::vector<cv::Rect> regions(count);
+    std::vector<bool> valid(count, false);
+    int x1 = width, y1 = height, x2 = 0, y2 = 0;
+    for (int i = 0; i < count; ++i) {
+        valid[i] = clamp_region(frame, r[i * 4], r[i * 4 + 1], r[i * 4 + 2], r[i * 4 + 3], regions[i]);
+        if (valid[i]) {
+            x1 = std::min(x1, regions[i].x);
+            y1 = std::min(y1, regions[i].y);
+            x2 = std::max(x2, regions[i].x + regions[i].width);
+            y2 = std::max(y2, regions[i].y + regions[i].height);
+        }
+    }
+    if (x2 <= x1 || y2 <= y1) {
+        return 0;
+    }
+
+    // One detector pass per tile, tiles spread over the pool
+    const std::vector<cv::Rect> tiles = frame_tiles(cv::Rect(x1, y1, x2 - x1, y2 - y1));
+    std::vector<std::vector<Detection>> tile_faces(tiles.size());
+    InferencePool::instance().run(static_cast<int>(tiles.size()), [&](int t, WorkerScratch& scratch) {
+        tile_faces[t] = detect_tile_faces(frame(tiles[t]), scratch);
+    });
+    std::vector<Detection> faces;
+    for (size_t t = 0; t < tiles.size(); ++t) {
+        for (Detection face : tile_faces[t]) {
+            face.x1 += tiles[t].x;
+            face.x2 += tiles[t].x;
+            face.y1 += tiles[t].y;
+            face.y2 += tiles[t].y;
+            faces.push_back(face);
+        }
+    }
+    // Faces on a seam were seen by both tiles; also sorts most confident first
+    faces = hard_nms(faces, IOU_THRESHOLD);
+    const int32_t detect_share = elapsed_us(detect_start) / std::max(1, static_cast<int>(count));
+
+    // Assign faces to the regions holding most of their box, in region coordinates
+    std::vector<std::vector<Detection>> region_faces(count);
+    for (const auto& face : faces) {
+        float face_area = std::max(1.0f, (face.x2 - face.x1) * (face.y2 - face.y1));
+        for (int i = 0; i < count; ++i) {
+            if (!valid[i]) {
+                continue;
+            }
+            const cv::Rect& region = regions[i];
+            float ix1 = std::max(face.x1, static_cast<float>(region.x));
+            float iy1 = std::max(face.y1, static_cast<float>(region.y));
+            float ix2 = std::min(face.x2, static_cast<float>(region.x + region.width));
+            float iy2 = std::min(face.y2, static_cast<float>(region.y + region.height));
+            if (ix2 <= ix1 || iy2 <= iy1 || (ix2 - ix1) * (iy2 - iy1) < face_area * FRAME_MIN_FACE_INSIDE) {
+                continue;
+            }
+            region_faces[i].push_back({ix1 - region.x, iy1 - region.y, ix2 - region.x, iy2 - region.y, face.score});
+        }
+    }
+
+    // Gender stage per region, regions spread over the pool
+    InferencePool::instance().run(count, [&](int i, WorkerScratch& scratch) {
+        if (!valid[i]) {
+            return;
+        }
+        auto total_start = std::chrono::steady_clock::now();
+        RegionResult result = RegionResult();
+        cv::cvtColor(frame(regions[i]), scratch.rgb, cv::COLOR_BGRA2RGB);
+        result.preprocess_us = elapsed_us(total_start);
+        classify_faces(scratch.rgb, region_faces[i], scratch, result, start_time);
+        result.detect_us = detect_share;
+        result.total_us = elapsed_us(total_start) + detect_share;
+        result.face_source = FACE_SOURCE_FRAME;
+        std::memcpy(results + i * sizeof(RegionResult), &result, sizeof(RegionResult));
+    });
+    auto duration = std::chrono::duration_cast<std::chrono::milliseconds>(
+            std::chrono::high_resolution_clock::now() - start_time);
+    __android_log_print(ANDROID_LOG_INFO, "ClassifyFrame", "Classified %d regions with %zu detector passes, %zu faces, in %lld ms",
+                       count, tiles.size(), faces.size(), static_cast<long long>(duration.count()));
+    return static_cast<jint>(tiles.size());
+}
+
 extern "C" JNIEXPORT jstring JNICALL
 Java_com_haram_block_ImageViewAccessibilityService_ImageClassification(
     JNIEnv* env,
@@ -470,7 +1073,11 @@ Java_com_haram_block_ImageViewAccessibilityService_ImageClassification(
         return env->NewStringUTF("false");
     }
     
-    bool result = process_image_with_gender_count(src, mgr);
+    RegionResult region_result;
+    InferencePool::instance().run(1, [&](int, WorkerScratch& scratch) {
+        classify_image(src, mgr, scratch, region_result);
+    });
+    bool result = region_result.verdict == VERDICT_SAFE;
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Step 3: Classification processing completed, result: %s", result ? "true" : "false");
     
     // Check if processing took too long
@@ -483,4 +1090,90 @@ Java_com_haram_block_ImageViewAccessibilityService_ImageClassification(
     
     __android_log_print(ANDROID_LOG_INFO, "ImageClassification", "Step 5: Returning result to Java");
     return env->NewStringUTF(result ? "true" : "false");
-}
\ No newline at end of file
+}
+
+/**
+ * @brief Configure the native inference worker pool.
+ * @param threads: number of inference workers (regions classified in parallel).
+ * @param cpuPolicy: 0 = any core, 1 = little cores, 2 = big cores.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_ConfigureInference(
+    JNIEnv*,
+    jobject,
+    jint threads,
+    jint cpuPolicy) {
+    InferencePool::instance().configure(threads, cpuPolicy);
+}
+
+// Run one dummy forward pass through each net so ncnn sets up its kernels and the worker's allocators
+void warm_up_worker(WorkerScratch& scratch) {
+    ncnn::Mat fd_input(FD_MODEL_WIDTH, FD_MODEL_HEIGHT, 3, 4u, &scratch.blob_allocator);
+    fd_input.fill(0.0f);
+    ncnn::Extractor face_ex = face_net.create_extractor();
+    face_ex.set_light_mode(true);
+    face_ex.set_blob_allocator(&scratch.blob_allocator);
+    face_ex.set_workspace_allocator(&scratch.workspace_allocator);
+    face_ex.input("in0", fd_input);
+    ncnn::Mat conf_mat, box_mat;
+    face_ex.extract("out0", conf_mat);
+    face_ex.extract("out1", box_mat);
+
+    ncnn::Mat gender_input(GENDER_MODEL_WIDTH, GENDER_MODEL_HEIGHT, 3, 4u, &scratch.blob_allocator);
+    gender_input.fill(0.0f);
+    ncnn::Extractor gender_ex = gender_net.create_extractor();
+    gender_ex.set_light_mode(true);
+    gender_ex.set_blob_allocator(&scratch.blob_allocator);
+    gender_ex.set_workspace_allocator(&scratch.workspace_allocator);
+    gender_ex.input("in0", gender_input);
+    ncnn::Mat gender_output;
+    gender_ex.extract("out0", gender_output);
+}
+
+/**
+ * @brief Load both models and warm up every inference worker with dummy 160x120 and 32x32 passes.
+ * Meant to be called once from a background thread when the service connects.
+ * @param assetManager: AssetManager object for loading NCNN model files in assets folder.
+ * @return time to ready in milliseconds, or -1 if the models could not be loaded.
+ */
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_WarmUpModels(
+    JNIEnv* env,
+    jobject,
+    jobject assetManager) {
+
+    auto start_time = std::chrono::steady_clock::now();
+    AAssetManager* mgr = AAssetManager_fromJava(env, assetManager);
+    std::string init_result = initialize_models(mgr);
+    if (init_result != "SUCCESS") {
+        __android_log_print(ANDROID_LOG_ERROR, "WarmUp", "Model initialization failed: %s", init_result.c_str());
+        return -1;
+    }
+    auto loaded_ms = std::chrono::duration_cast<std::chrono::milliseconds>(
+            std::chrono::steady_clock::now() - start_time).count();
+
+    InferencePool::instance().run_on_each([](int, WorkerScratch& scratch) {
+        warm_up_worker(scratch);
+    });
+
+    auto ready_ms = std::chrono::duration_cast<std::chrono::milliseconds>(
+            std::chrono::steady_clock::now() - start_time).count();
+    __android_log_print(ANDROID_LOG_INFO, "WarmUp", "Models loaded in %lld ms, ready in %lld ms",
+                       static_cast<long long>(loaded_ms), static_cast<long long>(ready_ms));
+    return static_cast<jlong>(ready_ms);
+}
+
+/**
+ * @brief Configure the gender classification stage.
+ * @param earlyExit: stop at the first female face instead of scoring every face.
+ * @param maxFaces: classify at most this many faces per region (most confident first), 0 = no limit.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_haram_block_ImageViewAccessibilityService_ConfigureGender(
+    JNIEnv*,
+    jobject,
+    jboolean earlyExit,
+    jint maxFaces) {
+    gender_early_exit.store(earlyExit == JNI_TRUE);
+    gender_max_faces.store(std::max(0, static_cast<int>(maxFaces)));
+}
@@ -1,8 +1,50 @@
 #ifndef IMAGECLASSIFICATION_INFERENCE_H
 #define IMAGECLASSIFICATION_INFERENCE_H
 
+#include <cstdint>
 #include <opencv2/core.hpp>
 #include <android/asset_manager.h>
+#include "worker_pool.h"
+#include "face_tracker.h"
+
+// Verdict codes, mirrored by ClassificationResults.java
+const int32_t VERDICT_ERROR = 0;
+const int32_t VERDICT_SAFE = 1;
+const int32_t VERDICT_BLOCKED = 2;
+
+// Where a region's face boxes came from, mirrored by ClassificationResults.java
+const int32_t FACE_SOURCE_NONE = 0;       // no face stage ran (error)
+const int32_t FACE_SOURCE_DETECTOR = 1;
+const int32_t FACE_SOURCE_TRACKER = 2;    // followed from an earlier detection, detector skipped; boxes moved,
+                                          // detector confidences are those of that detection
+const int32_t FACE_SOURCE_FRAME = 3;      // assigned from one detection over the whole frame
+
+// Faces reported per region; detection itself is not capped by this
+const int RESULT_MAX_FACES = 8;
+
+struct FaceBox {
+    float x1, y1, x2, y2;   // region coordinates
+    float female_score;     // softmax female probability, -1 if the face was not classified
+};
+
+/**
+ * Per-region classification record. Native code copies it verbatim into the caller-owned
+ * direct ByteBuffer, so the field order and sizes must match ClassificationResults.java.
+ */
+struct RegionResult {
+    int32_t verdict;
+    int32_t face_count;
+    float max_female_score;
+    int32_t box_count;
+    int32_t preprocess_us;
+    int32_t detect_us;
+    int32_t gender_us;
+    int32_t total_us;
+    int32_t face_source;
+    FaceBox boxes[RESULT_MAX_FACES];
+};
+
+static_assert(sizeof(RegionResult) == (9 + RESULT_MAX_FACES * 5) * 4, "RegionResult layout changed");
 
 /**
  * @brief Perform inference for classifying a given image using the NCNN model.
@@ -12,4 +54,16 @@
  */
 std::string Inference(cv::Mat& src, AAssetManager* mgr);
 
-#endif //IMAGECLASSIFICATION_INFERENCE_H
\ No newline at end of file
+/**
+ * @brief Detect faces in an image and classify their gender.
+ * @param src: 4-channel image (may be a view into a larger frame).
+ * @param mgr: AAssetManager pointer for loading NCNN model files on first use.
+ * @param scratch: allocators and buffers of the worker thread running this call.
+ * @param out: receives verdict, faces, scores and per-stage timings.
+ * @param track: faces of this region from earlier calls; when they can still be followed the
+ * detector is skipped. nullptr detects every time.
+ */
+void classify_image(cv::Mat& src, AAssetManager* mgr, WorkerScratch& scratch, RegionResult& out,
+                    FaceTrack* track = nullptr);
+
+#endif //IMAGECLASSIFICATION_INFERENCE_H
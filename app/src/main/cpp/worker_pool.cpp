@@ -0,0 +1,153 @@
+#include "worker_pool.h"
+
+#include <algorithm>
+
+#include <sched.h>
+#include <sys/resource.h>
+#include <unistd.h>
+#include <android/log.h>
+#include <ncnn/cpu.h>
+
+InferencePool& InferencePool::instance() {
+    static InferencePool pool;
+    return pool;
+}
+
+InferencePool::~InferencePool() {
+    std::lock_guard<std::mutex> run_lock(run_mutex);
+    stop_locked();
+}
+
+void InferencePool::configure(int threads, int cpu_policy) {
+    std::lock_guard<std::mutex> run_lock(run_mutex);
+    stop_locked();
+    start_locked(threads, cpu_policy);
+}
+
+int InferencePool::thread_count() {
+    std::lock_guard<std::mutex> run_lock(run_mutex);
+    return static_cast<int>(workers.size());
+}
+
+void InferencePool::start_locked(int threads, int cpu_policy) {
+    int cpu_count = std::max(1, ncnn::get_cpu_count());
+    threads = std::max(1, std::min(threads, cpu_count));
+    if (cpu_policy < CPU_POLICY_ALL || cpu_policy > CPU_POLICY_BIG) {
+        cpu_policy = CPU_POLICY_ALL;
+    }
+
+    stopping = false;
+    for (int i = 0; i < threads; ++i) {
+        scratches.push_back(new WorkerScratch());
+    }
+    for (int i = 0; i < threads; ++i) {
+        workers.emplace_back(&InferencePool::worker_loop, this, i, cpu_policy, generation);
+    }
+    __android_log_print(ANDROID_LOG_INFO, "InferencePool", "Started %d workers, cpu policy %d (%d cpus)",
+                       threads, cpu_policy, cpu_count);
+}
+
+void InferencePool::stop_locked() {
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        stopping = true;
+    }
+    work_cv.notify_all();
+    for (auto& worker : workers) {
+        worker.join();
+    }
+    workers.clear();
+    for (auto* scratch : scratches) {
+        delete scratch;
+    }
+    scratches.clear();
+}
+
+void InferencePool::run(int count, const std::function<void(int, WorkerScratch&)>& fn) {
+    if (count <= 0) {
+        return;
+    }
+    std::lock_guard<std::mutex> run_lock(run_mutex);
+    dispatch_locked(count, false, fn);
+}
+
+void InferencePool::run_on_each(const std::function<void(int, WorkerScratch&)>& fn) {
+    std::lock_guard<std::mutex> run_lock(run_mutex);
+    dispatch_locked(0, true, fn);
+}
+
+void InferencePool::dispatch_locked(int count, bool each, const std::function<void(int, WorkerScratch&)>& fn) {
+    if (workers.empty()) {
+        start_locked(1, CPU_POLICY_ALL);
+    }
+
+    std::unique_lock<std::mutex> lock(mutex);
+    job = &fn;
+    job_count = count;
+    job_on_each = each;
+    next_index.store(0);
+    active_workers = static_cast<int>(workers.size());
+    ++generation;
+    work_cv.notify_all();
+
+    done_cv.wait(lock, [this] { return active_workers == 0; });
+    job = nullptr;
+    job_count = 0;
+}
+
+void InferencePool::worker_loop(int index, int cpu_policy, long start_generation) {
+    // Threads inherit the nice value of their creator, which may be a background thread; inference
+    // runs at normal priority so the big-core policy is not undone by the scheduler
+    if (setpriority(PRIO_PROCESS, gettid(), 0) != 0) {
+        __android_log_print(ANDROID_LOG_WARN, "InferencePool", "Worker %d: failed to reset priority", index);
+    }
+
+    // Pin this worker to the requested cluster; sched_setaffinity(0) only affects the calling thread
+    const ncnn::CpuSet& mask = ncnn::get_cpu_thread_affinity_mask(cpu_policy);
+    cpu_set_t cpus;
+    CPU_ZERO(&cpus);
+    int enabled = 0;
+    for (int cpu = 0; cpu < ncnn::get_cpu_count() && cpu < CPU_SETSIZE; ++cpu) {
+        if (mask.is_enabled(cpu)) {
+            CPU_SET(cpu, &cpus);
+            ++enabled;
+        }
+    }
+    if (enabled > 0 && sched_setaffinity(0, sizeof(cpus), &cpus) != 0) {
+        __android_log_print(ANDROID_LOG_WARN, "InferencePool", "Worker %d: failed to set cpu affinity", index);
+    }
+
+    WorkerScratch& scratch = *scratches[index];
+    long seen_generation = start_generation;
+    while (true) {
+        const std::function<void(int, WorkerScratch&)>* current;
+        int count;
+        bool each;
+        {
+            std::unique_lock<std::mutex> lock(mutex);
+            work_cv.wait(lock, [&] { return stopping || generation != seen_generation; });
+            if (stopping) {
+                return;
+            }
+            seen_generation = generation;
+            current = job;
+            count = job_count;
+            each = job_on_each;
+        }
+
+        if (each) {
+            (*current)(index, scratch);
+        } else {
+            for (int i = next_index.fetch_add(1); i < count; i = next_index.fetch_add(1)) {
+                (*current)(i, scratch);
+            }
+        }
+
+        {
+            std::lock_guard<std::mutex> lock(mutex);
+            if (--active_workers == 0) {
+                done_cv.notify_one();
+            }
+        }
+    }
+}
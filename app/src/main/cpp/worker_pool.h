@@ -0,0 +1,80 @@
+#ifndef IMAGECLASSIFICATION_WORKER_POOL_H
+#define IMAGECLASSIFICATION_WORKER_POOL_H
+
+#include <atomic>
+#include <condition_variable>
+#include <functional>
+#include <mutex>
+#include <thread>
+#include <vector>
+#include <opencv2/core.hpp>
+#include <ncnn/net.h>
+
+// CPU affinity policies, same values as ncnn powersave modes
+const int CPU_POLICY_ALL = 0;
+const int CPU_POLICY_LITTLE = 1;
+const int CPU_POLICY_BIG = 2;
+
+/**
+ * Memory owned by one worker thread. Extractors created on that worker draw from these
+ * allocators, and the intermediate images are reused between jobs instead of reallocated.
+ */
+struct WorkerScratch {
+    ncnn::UnlockedPoolAllocator blob_allocator;
+    ncnn::UnlockedPoolAllocator workspace_allocator;
+    cv::Mat rgb;
+    cv::Mat resized_fd;
+    cv::Mat downscaled;             // region shrunk for scale benchmarking
+    cv::Mat track_thumb;            // grayscale detector input, for face tracking
+    cv::Mat face_batch;             // faces resized to 32x32, stacked vertically
+    std::vector<int> batch_faces;   // detection index of each tile in face_batch
+};
+
+/**
+ * Fixed set of inference threads. run() spreads job indices over the workers and blocks
+ * until all of them have finished; each job gets the scratch of the worker running it.
+ */
+class InferencePool {
+public:
+    static InferencePool& instance();
+
+    /**
+     * @brief (Re)start the pool. Waits for any in-flight run() to finish first.
+     * @param threads: number of workers, clamped to [1, cpu count].
+     * @param cpu_policy: CPU_POLICY_ALL, CPU_POLICY_LITTLE or CPU_POLICY_BIG.
+     */
+    void configure(int threads, int cpu_policy);
+
+    void run(int count, const std::function<void(int, WorkerScratch&)>& job);
+
+    // Run job exactly once on every worker (index = worker index), e.g. to warm its scratch
+    void run_on_each(const std::function<void(int, WorkerScratch&)>& job);
+
+    int thread_count();
+
+private:
+    InferencePool() = default;
+    ~InferencePool();
+
+    void start_locked(int threads, int cpu_policy);
+    void stop_locked();
+    void dispatch_locked(int count, bool each, const std::function<void(int, WorkerScratch&)>& fn);
+    void worker_loop(int index, int cpu_policy, long start_generation);
+
+    std::mutex run_mutex;          // one run()/configure() at a time
+    std::mutex mutex;              // guards the job state below
+    std::condition_variable work_cv;
+    std::condition_variable done_cv;
+
+    std::vector<std::thread> workers;
+    std::vector<WorkerScratch*> scratches;
+    const std::function<void(int, WorkerScratch&)>* job = nullptr;
+    int job_count = 0;
+    bool job_on_each = false;
+    std::atomic<int> next_index{0};
+    int active_workers = 0;
+    long generation = 0;
+    bool stopping = false;
+};
+
+#endif //IMAGECLASSIFICATION_WORKER_POOL_H
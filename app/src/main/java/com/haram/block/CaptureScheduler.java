@@ -0,0 +1,166 @@
+package com.haram.block;
+
+import android.hardware.display.VirtualDisplay;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets the capture VirtualDisplay composite frames only while some view is waiting for a verdict.
+ * Without demand the display's surface is detached, so the compositor stops producing frames
+ * for it instead of filling the ImageReader at display refresh rate. A single watch frame can
+ * be requested in between to look for content that changed without a layout change.
+ */
+public class CaptureScheduler {
+    private static final String TAG = "CaptureScheduler";
+
+    private VirtualDisplay display;
+    private Surface surface;
+    private boolean demand = false;
+    private boolean watchFrame = false;
+    private boolean flowing = false;
+    private long flowStartTime = 0;
+
+    private final AtomicLong framesProduced = new AtomicLong(0);
+    private final AtomicLong framesUsed = new AtomicLong(0);
+    private final AtomicLong framesWasted = new AtomicLong(0);
+    private final AtomicLong framesDrained = new AtomicLong(0);
+    private final AtomicLong resumes = new AtomicLong(0);
+    private final AtomicLong watchFrames = new AtomicLong(0);
+    private final AtomicLong flowingMs = new AtomicLong(0);
+
+    /**
+     * Take control of a freshly created display; frames keep flowing only if there is demand
+     */
+    public synchronized void attach(VirtualDisplay display, Surface surface) {
+        this.display = display;
+        this.surface = surface;
+        // createVirtualDisplay starts with the surface attached
+        this.flowing = true;
+        this.flowStartTime = SystemClock.elapsedRealtime();
+        apply();
+    }
+
+    public synchronized void detach() {
+        if (flowing) {
+            flowingMs.addAndGet(SystemClock.elapsedRealtime() - flowStartTime);
+        }
+        display = null;
+        surface = null;
+        flowing = false;
+        watchFrame = false;
+    }
+
+    /**
+     * @param pending true while at least one visible view still needs classification
+     */
+    public synchronized void setDemand(boolean pending) {
+        if (demand == pending) {
+            return;
+        }
+        demand = pending;
+        apply();
+    }
+
+    /**
+     * Let one frame through even without demand; ends with finishWatchFrame()
+     */
+    public synchronized void requestWatchFrame() {
+        if (watchFrame || demand) {
+            return;
+        }
+        watchFrame = true;
+        watchFrames.incrementAndGet();
+        apply();
+    }
+
+    /**
+     * A frame arrived; a requested watch frame is no longer outstanding
+     */
+    public synchronized void finishWatchFrame() {
+        if (watchFrame) {
+            watchFrame = false;
+            apply();
+        }
+    }
+
+    /**
+     * True while frames should be read, for pending views or a watch frame
+     */
+    public synchronized boolean hasDemand() {
+        return demand || watchFrame;
+    }
+
+    private void apply() {
+        boolean wanted = demand || watchFrame;
+        if (display == null || flowing == wanted) {
+            return;
+        }
+        try {
+            display.setSurface(wanted ? surface : null);
+        } catch (Throwable t) {
+            Log.w(TAG, "Error switching capture surface", t);
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (wanted) {
+            resumes.incrementAndGet();
+            flowStartTime = now;
+        } else {
+            flowingMs.addAndGet(now - flowStartTime);
+        }
+        flowing = wanted;
+        Log.d(TAG, wanted ? "Capture resumed" : "Capture paused");
+    }
+
+    /**
+     * An ImageReader frame became available
+     */
+    public void recordFrameProduced() {
+        framesProduced.incrementAndGet();
+    }
+
+    /**
+     * A frame was processed and classified at least one view
+     */
+    public void recordFrameUsed() {
+        framesUsed.incrementAndGet();
+    }
+
+    /**
+     * A frame was processed but nothing needed classifying (or models were not ready)
+     */
+    public void recordFrameWasted() {
+        framesWasted.incrementAndGet();
+    }
+
+    /**
+     * A frame arrived after demand ended and was closed without being read
+     */
+    public void recordFrameDrained() {
+        framesDrained.incrementAndGet();
+    }
+
+    public long getFramesProduced() {
+        return framesProduced.get();
+    }
+
+    public long getFramesUsed() {
+        return framesUsed.get();
+    }
+
+    /**
+     * Get capture statistics summary string
+     */
+    public synchronized String getStatsSummary() {
+        long produced = framesProduced.get();
+        long used = framesUsed.get();
+        long flowMs = flowingMs.get() + (flowing ? SystemClock.elapsedRealtime() - flowStartTime : 0);
+        return String.format(
+            "Capture: produced %d | used %d | wasted %d | drained %d | resumes %d | watch %d | flowing %dms | use rate: %.1f%%",
+            produced, used, framesWasted.get(), framesDrained.get(), resumes.get(), watchFrames.get(), flowMs,
+            produced > 0 ? (used * 100.0f) / produced : 0f
+        );
+    }
+}
@@ -0,0 +1,125 @@
+package com.haram.block;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Caller-owned direct buffer that native classification writes one fixed-size record per region into.
+ * Reading a record never allocates. The layout must match RegionResult in inference.h.
+ */
+public class ClassificationResults {
+    public static final int VERDICT_ERROR = 0;
+    public static final int VERDICT_SAFE = 1;
+    public static final int VERDICT_BLOCKED = 2;
+
+    // Where the face boxes came from
+    public static final int FACE_SOURCE_NONE = 0;
+    public static final int FACE_SOURCE_DETECTOR = 1;
+    public static final int FACE_SOURCE_TRACKER = 2;  // followed from an earlier detection, not re-scored by it
+    public static final int FACE_SOURCE_FRAME = 3;    // assigned from one detection over the whole frame
+
+    public static final int MAX_FACES = 8;
+
+    // Record: verdict | faceCount | maxFemaleScore | boxCount | preprocessUs | detectUs | genderUs | totalUs | faceSource
+    //         then MAX_FACES x (x1, y1, x2, y2, femaleScore), all 4-byte fields
+    private static final int OFF_VERDICT = 0;
+    private static final int OFF_FACE_COUNT = 4;
+    private static final int OFF_MAX_FEMALE = 8;
+    private static final int OFF_BOX_COUNT = 12;
+    private static final int OFF_PREPROCESS_US = 16;
+    private static final int OFF_DETECT_US = 20;
+    private static final int OFF_GENDER_US = 24;
+    private static final int OFF_TOTAL_US = 28;
+    private static final int OFF_FACE_SOURCE = 32;
+    private static final int OFF_BOXES = 36;
+    private static final int BOX_SIZE = 5 * 4;
+    static final int RECORD_SIZE = OFF_BOXES + MAX_FACES * BOX_SIZE;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    public ClassificationResults(int capacity) {
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Buffer handed to native code
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Mark the first count records as failed, e.g. when the native call threw
+     */
+    public void fillError(int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(i * RECORD_SIZE + OFF_VERDICT, VERDICT_ERROR);
+            buffer.putInt(i * RECORD_SIZE + OFF_FACE_COUNT, 0);
+            buffer.putInt(i * RECORD_SIZE + OFF_BOX_COUNT, 0);
+            buffer.putInt(i * RECORD_SIZE + OFF_FACE_SOURCE, FACE_SOURCE_NONE);
+        }
+    }
+
+    public int verdict(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_VERDICT);
+    }
+
+    public int faceCount(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_FACE_COUNT);
+    }
+
+    public float maxFemaleScore(int region) {
+        return buffer.getFloat(region * RECORD_SIZE + OFF_MAX_FEMALE);
+    }
+
+    /**
+     * Number of face boxes reported, at most MAX_FACES
+     */
+    public int boxCount(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_BOX_COUNT);
+    }
+
+    public int preprocessMicros(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_PREPROCESS_US);
+    }
+
+    public int detectMicros(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_DETECT_US);
+    }
+
+    public int genderMicros(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_GENDER_US);
+    }
+
+    public int totalMicros(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_TOTAL_US);
+    }
+
+    /**
+     * FACE_SOURCE_DETECTOR, FACE_SOURCE_TRACKER or FACE_SOURCE_FRAME, FACE_SOURCE_NONE if no face stage ran
+     */
+    public int faceSource(int region) {
+        return buffer.getInt(region * RECORD_SIZE + OFF_FACE_SOURCE);
+    }
+
+    /**
+     * Face box coordinate in region space
+     * @param coord 0..3 for x1, y1, x2, y2
+     */
+    public float boxCoord(int region, int face, int coord) {
+        return buffer.getFloat(region * RECORD_SIZE + OFF_BOXES + face * BOX_SIZE + coord * 4);
+    }
+
+    /**
+     * Female probability of a face, -1 if it was not classified (e.g. early exit)
+     */
+    public float boxFemaleScore(int region, int face) {
+        return buffer.getFloat(region * RECORD_SIZE + OFF_BOXES + face * BOX_SIZE + 16);
+    }
+}
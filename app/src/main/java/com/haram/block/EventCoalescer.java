@@ -0,0 +1,106 @@
+package com.haram.block;
+
+import android.view.Choreographer;
+
+/**
+ * Merges bursts of accessibility events into at most one refresh per frame. Events only record
+ * which kind of work is pending; the refresh runs on the next vsync with the highest priority
+ * requested since the previous one. Tree stage only: request(), cancel() and the refresh all run
+ * on the tree stage's HandlerThread, driven by that looper's Choreographer.
+ */
+public class EventCoalescer {
+    public static final int PRIORITY_NONE = 0;
+    public static final int PRIORITY_FOCUS = 1;
+    public static final int PRIORITY_CONTENT = 2;
+    public static final int PRIORITY_WINDOW = 3;
+
+    public interface Refresh {
+        /**
+         * @param priority   highest priority requested this frame
+         * @param eventTypes union of the event types received this frame
+         */
+        void run(int priority, int eventTypes);
+    }
+
+    private final Refresh refresh;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> doFrame();
+    private boolean scheduled = false;
+
+    // Pending for the next frame
+    private int pendingPriority = PRIORITY_NONE;
+    private int pendingEventTypes = 0;
+    private int pendingEvents = 0;
+
+    // Statistics
+    private long eventsReceived = 0;
+    private long refreshesExecuted = 0;
+    private int maxEventsPerRefresh = 0;
+    private final long[] refreshesByPriority = new long[PRIORITY_WINDOW + 1];
+
+    public EventCoalescer(Refresh refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Count an event; call for every event received, whether or not it requests work
+     */
+    public void onEvent(int eventType) {
+        eventsReceived++;
+        pendingEvents++;
+        pendingEventTypes |= eventType;
+    }
+
+    /**
+     * Ask for a refresh on the next frame; repeated requests in one frame merge
+     */
+    public void request(int priority) {
+        if (priority > pendingPriority) {
+            pendingPriority = priority;
+        }
+        if (!scheduled) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    /**
+     * Drop pending work, e.g. when the service is deactivated
+     */
+    public void cancel() {
+        if (scheduled) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            scheduled = false;
+        }
+        pendingPriority = PRIORITY_NONE;
+        pendingEventTypes = 0;
+        pendingEvents = 0;
+    }
+
+    private void doFrame() {
+        scheduled = false;
+        int priority = pendingPriority;
+        int eventTypes = pendingEventTypes;
+        maxEventsPerRefresh = Math.max(maxEventsPerRefresh, pendingEvents);
+        pendingPriority = PRIORITY_NONE;
+        pendingEventTypes = 0;
+        pendingEvents = 0;
+        if (priority == PRIORITY_NONE) {
+            return;
+        }
+        refreshesExecuted++;
+        refreshesByPriority[priority]++;
+        refresh.run(priority, eventTypes);
+    }
+
+    /**
+     * Get statistics on events received vs refreshes executed
+     */
+    public String getStatsSummary() {
+        return String.format(
+            "Events: %d received, %d refreshes (%.1f events/refresh, max %d in a frame) | window %d, content %d, focus %d",
+            eventsReceived, refreshesExecuted,
+            refreshesExecuted > 0 ? eventsReceived / (float) refreshesExecuted : 0f, maxEventsPerRefresh,
+            refreshesByPriority[PRIORITY_WINDOW], refreshesByPriority[PRIORITY_CONTENT], refreshesByPriority[PRIORITY_FOCUS]
+        );
+    }
+}
@@ -0,0 +1,88 @@
+package com.haram.block;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-crop vs whole-frame detection counters. Every batch classified in one mode is classified
+ * in the other as well, with the per-crop verdicts as the reference. Batches of DENSE_REGIONS
+ * or more views (dense feeds) are counted apart from sparse ones.
+ */
+public class FrameDetectionBenchmark {
+    public static final int DENSE_REGIONS = 4;
+
+    private static final int DENSE = 0;
+    private static final int SPARSE = 1;
+
+    private final AtomicLong[] batches = newCounters();
+    private final AtomicLong[] regions = newCounters();
+    private final AtomicLong[] cropPasses = newCounters();
+    private final AtomicLong[] framePasses = newCounters();
+    private final AtomicLong[] cropMicros = newCounters();
+    private final AtomicLong[] frameMicros = newCounters();
+    private final AtomicLong[] compared = newCounters();
+    private final AtomicLong[] agreements = newCounters();
+    private final AtomicLong[] missedBlocks = newCounters();
+    private final AtomicLong[] extraBlocks = newCounters();
+    private final AtomicLong[] faceCountDiffs = newCounters();
+
+    private static AtomicLong[] newCounters() {
+        return new AtomicLong[] {new AtomicLong(0), new AtomicLong(0)};
+    }
+
+    private static int bucket(int batchRegions) {
+        return batchRegions >= DENSE_REGIONS ? DENSE : SPARSE;
+    }
+
+    /**
+     * Record the cost of one batch in both modes: detector passes and wall time of the native call
+     */
+    public void recordBatch(int batchRegions, int cropDetectorPasses, long cropWallMicros,
+                            int frameDetectorPasses, long frameWallMicros) {
+        int b = bucket(batchRegions);
+        batches[b].incrementAndGet();
+        regions[b].addAndGet(batchRegions);
+        cropPasses[b].addAndGet(cropDetectorPasses);
+        framePasses[b].addAndGet(frameDetectorPasses);
+        cropMicros[b].addAndGet(cropWallMicros);
+        frameMicros[b].addAndGet(frameWallMicros);
+    }
+
+    /**
+     * Record one region of a batch as classified per crop and from the whole frame
+     */
+    public void recordRegion(int batchRegions, int cropVerdict, int cropFaces, int frameVerdict, int frameFaces) {
+        int b = bucket(batchRegions);
+        compared[b].incrementAndGet();
+        boolean cropBlocked = cropVerdict != ClassificationResults.VERDICT_SAFE;
+        boolean frameBlocked = frameVerdict != ClassificationResults.VERDICT_SAFE;
+        if (cropBlocked == frameBlocked) {
+            agreements[b].incrementAndGet();
+        } else if (cropBlocked) {
+            missedBlocks[b].incrementAndGet();
+        } else {
+            extraBlocks[b].incrementAndGet();
+        }
+        faceCountDiffs[b].addAndGet(Math.abs(cropFaces - frameFaces));
+    }
+
+    /**
+     * Get benchmark summary string, dense feeds first
+     */
+    public String getStatsSummary() {
+        return "Frame detection benchmark | dense (" + DENSE_REGIONS + "+ views): " + bucketSummary(DENSE) +
+                " | sparse: " + bucketSummary(SPARSE);
+    }
+
+    private String bucketSummary(int b) {
+        long n = batches[b].get();
+        long c = compared[b].get();
+        return String.format("%d batches, %d regions, detector passes crop %d vs frame %d, " +
+                        "%.1fms vs %.1fms per batch, agree %.1f%%, missed %d, extra %d, face diff %.2f",
+                n, regions[b].get(), cropPasses[b].get(), framePasses[b].get(),
+                n > 0 ? cropMicros[b].get() / (n * 1000.0f) : 0f,
+                n > 0 ? frameMicros[b].get() / (n * 1000.0f) : 0f,
+                c > 0 ? (agreements[b].get() * 100.0f) / c : 0f,
+                missedBlocks[b].get(), extraBlocks[b].get(),
+                c > 0 ? faceCountDiffs[b].get() / (float) c : 0f);
+    }
+}
@@ -25,22 +25,29 @@ import android.media.projection.MediaProjectionManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.view.Choreographer;
 import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityWindowInfo;
 import android.view.Gravity;
 import android.content.res.AssetManager;
+import android.content.res.Configuration;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ImageViewAccessibilityService extends AccessibilityService {
 
@@ -55,6 +62,23 @@ public class ImageViewAccessibilityService extends AccessibilityService {
     private static final String PREFS = "com.haram.block";
     private static final String PREF_USER_WANTS_ACTIVE = "user_wants_active";
 
+    // Native inference pool: worker count and CPU cluster (0 = any, 1 = little, 2 = big cores)
+    private static final String PREF_INFERENCE_THREADS = "inference_threads";
+    private static final String PREF_INFERENCE_CPU_POLICY = "inference_cpu_policy";
+    private static final int CPU_POLICY_BIG = 2;
+
+    // Gender stage: stop at the first female face, and how many faces per region to classify (0 = all)
+    private static final String PREF_GENDER_EARLY_EXIT = "gender_early_exit";
+    private static final String PREF_GENDER_MAX_FACES = "gender_max_faces";
+
+    // Eager model warm-up; classification is skipped (not blocked) until it completes
+    private static final long WARM_UP_RETRY_INTERVAL = 5000; // ms
+    private volatile boolean modelsReady = false;
+    private Thread warmUpThread;
+    private long lastWarmUpAttempt = 0;
+    private long serviceConnectedTime = 0;
+    private volatile long timeToReadyMs = -1;
+
     // MediaProjection result (Activity will set these statically after user grants it)
     public static Intent sMediaProjectionResultData;
     public static int sMediaProjectionResultCode;
@@ -62,7 +86,7 @@ public class ImageViewAccessibilityService extends AccessibilityService {
     private static final String TAG = "ImageViewService";
 
     // Removed: public static boolean active = false;
-    private boolean active = false;
+    private volatile boolean active = false;
 
     // Native libs
     static {
@@ -79,30 +103,219 @@ public class ImageViewAccessibilityService extends AccessibilityService {
     private Handler handler;
     private Handler backgroundHandler;
 
-    private String currentPackageName = "";
-    private Map<String, List<Rect>> cachedFixedElements = new HashMap<>();
+    // Pipeline: events are ingested (source lookups) and handed to the tree stage, which owns the
+    // window caches and walks; frames are acquired on their own thread and handed to inference;
+    // the main thread only commits overlay updates. Hand-off queues are bounded; capacities include
+    // the running task.
+    private static final int INGEST_QUEUE_CAPACITY = 128;
+    private static final int TREE_QUEUE_CAPACITY = 64;
+    private static final int FRAME_QUEUE_CAPACITY = 2;
+    private static final int INFERENCE_QUEUE_CAPACITY = 1; // one frame in flight, the next waits in the reader
+    private static final int RENDER_QUEUE_CAPACITY = 2;    // a commit may be queued while one runs
+    private PipelineStage ingestStage;
+    private PipelineStage treeStage;
+    private PipelineStage frameStage;
+    private PipelineStage inferenceStage;
+    private PipelineStage renderStage;
+    private Handler treeHandler;
+    // Latest snapshot for the overlay; a commit is queued only when this goes from null to a snapshot
+    private final AtomicReference<ViewSnapshot> pendingOverlay = new AtomicReference<>();
+    // Set when a full queue dropped events; the tree stage then re-walks every window
+    private final AtomicBoolean eventsDropped = new AtomicBoolean(false);
+    // Frames left in the reader while inference was busy; fetched once it is free again
+    private volatile boolean frameWaiting = false;
+
+    // Occluders per window, grid-indexed for exact visibility queries
+    private final VisibilityEngine visibilityEngine = new VisibilityEngine();
     private static final int MIN_IMAGE_SIZE_DP = 75; // dp
     private boolean isUpdating = false;
     private boolean isScrollMonitoring = false;
     private static final long SCROLL_MONITOR_DURATION = 1000; // ms
-    private long lastFixedDetectTime = 0;
-    private static final long FIXED_DETECT_DEBOUNCE = 500; // ms
     private Choreographer.FrameCallback frameCallback;
     private Runnable stopMonitoringRunnable;
-    private int currentScreenScrollX = 0;
-    private int currentScreenScrollY = 0;
+
+    // Scroll tracking: cached bounds are translated by scroll deltas, the tree is re-synced once scrolling settles
+    private boolean scrollResyncPending = false;
+    private AccessibilityNodeInfo lastScrollSource;
+    private long lastScrollContainerId = 0;
+    private int lastScrollX = -1;
+    private int lastScrollY = -1;
+    // Velocity of the scrolling container, lets the overlay extrapolate between scroll events
+    private final ScrollPredictor scrollPredictor = new ScrollPredictor();
 
     // Media projection for screen capture
     private MediaProjectionManager mediaProjectionManager;
     private MediaProjection mediaProjection;
-    private ImageReader imageReader;
+    // Replaced on rotation; frame stage tasks of an older reader drop out
+    private volatile ImageReader imageReader;
     private VirtualDisplay virtualDisplay;
 
-    // Cache for performance optimization
-    private Map<String, ImageViewInfo> cachedImageViews = new HashMap<>();
-    private long lastViewCacheTime = 0;
+    // Frames only flow while a visible view is waiting for a verdict
+    private final CaptureScheduler captureScheduler = new CaptureScheduler();
+
+    // Capture at 1/divisor of the screen size; view bounds are mapped into capture space before cropping
+    private static final String PREF_CAPTURE_SCALE_DIVISOR = "capture_scale_divisor";
+    private static final int MAX_CAPTURE_SCALE_DIVISOR = 4;
+    private int captureDivisor = 1;
+    private int captureWidth;
+    private int captureHeight;
+    private volatile int screenWidth;
+    private volatile int screenHeight;
+
+    // Accuracy-vs-scale benchmark, only runs on full-resolution captures
+    private static final String PREF_CAPTURE_SCALE_BENCHMARK = "capture_scale_benchmark";
+    private volatile boolean scaleBenchmarkEnabled = false;
+    private final ScaleBenchmark scaleBenchmark = new ScaleBenchmark();
+    private final ClassificationResults benchmarkResults = new ClassificationResults(MAX_BATCH_REGIONS);
+
+    // Working view set of the tree stage, keyed by ViewIdentity; only touched on the tree thread
+    private LongObjectMap<ImageViewInfo> cachedImageViews = new LongObjectMap<>();
+    // Frozen copy of the working set, the only view state other stages read
+    private volatile ViewSnapshot viewSnapshot = ViewSnapshot.EMPTY;
+    // Set while classification results are on their way to the tree stage
+    private final AtomicBoolean mergePending = new AtomicBoolean(false);
+    private final AtomicLong resultsMerged = new AtomicLong(0);
+    private final AtomicLong staleResultsMerged = new AtomicLong(0);
+    private final AtomicLong staleResultsDiscarded = new AtomicLong(0);
+    private final AtomicLong inferencesWasted = new AtomicLong(0);
+    private final long[] walkIdStack = new long[MAX_WALK_DEPTH + 2];
     private static final long VIEW_CACHE_DURATION = 3000; // ms
-    private boolean needsViewRefresh = true;
+
+    // Interactive windows (split screen, picture-in-picture, chat heads), cached per window id.
+    // A window is walked again only when its own events or a layout change mark it dirty.
+    private static final int MAX_WINDOWS_PER_SCAN = 3;
+    private static final long DEFERRED_SCAN_DELAY = 200; // ms
+    private static final int WINDOW_LAYOUT_CHANGES = AccessibilityEvent.WINDOWS_CHANGE_ADDED |
+            AccessibilityEvent.WINDOWS_CHANGE_REMOVED | AccessibilityEvent.WINDOWS_CHANGE_BOUNDS |
+            AccessibilityEvent.WINDOWS_CHANGE_LAYER;
+    private SparseArray<WindowCache> windowCaches = new SparseArray<>();
+    private boolean windowsChanged = true;
+    // Bounds (l, t, r, b) and layer of every listed window, occluding the windows below it
+    private int[] windowStackRects = new int[0];
+    private int[] windowStackLayers = new int[0];
+    private int windowStackCount = 0;
+    private final List<WindowCache> walkQueue = new ArrayList<>();
+    private final Runnable deferredScanRunnable = this::updateImageViewVisibility;
+    private int scrollWindowId = -1;
+
+    // Events only record pending work; at most one refresh runs per frame
+    private final EventCoalescer eventCoalescer = new EventCoalescer(this::runCoalescedRefresh);
+    private long windowSyncCount = 0;
+    private long windowsWalkedCount = 0;
+    private long windowsDeferredCount = 0;
+
+    // Incremental refresh: content events re-scan only their source subtree, full walks become periodic
+    private static final String PREF_INCREMENTAL_REFRESH = "incremental_refresh";
+    private static final long FULL_REFRESH_INTERVAL = 10000; // ms
+    private static final int MAX_PENDING_SUBTREES = 8;
+    private static final int NON_STRUCTURAL_CHANGES = AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT |
+            AccessibilityEvent.CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION |
+            AccessibilityEvent.CONTENT_CHANGE_TYPE_STATE_DESCRIPTION;
+    private boolean incrementalRefreshEnabled = true;
+
+    // Tree walks stop below this depth
+    private static final int MAX_WALK_DEPTH = 30;
+
+    // Full walks run in slices of at most WALK_SLICE_NODES nodes / WALK_SLICE_NANOS per frame
+    private static final long WALK_SLICE_NANOS = 4_000_000;
+    private static final int WALK_SLICE_NODES = 600;
+    private static final int WALK_MAX_NODES = 20000;
+    private static final int SUBTREE_MAX_NODES = 2000;
+    private final TreeWalker fullWalker = new TreeWalker(MAX_WALK_DEPTH);
+    private final TreeWalker subtreeWalker = new TreeWalker(MAX_WALK_DEPTH);
+    private final Rect walkViewport = new Rect();
+    private Choreographer.FrameCallback walkFrameCallback;
+    // Results of the full walk in progress
+    private LongObjectMap<ImageViewInfo> walkViews;
+    private Set<Rect> walkSeen;
+    private List<Rect> walkFixedElements;
+    private WindowCache walkWindow;
+    private final TreeWalker.Visitor fullWalkVisitor = (node, depth, pathIds, bounds) -> {
+        collectTargetView(node, depth, pathIds, bounds, walkViews, walkSeen, walkWindow);
+        if (isFixedElement(node, bounds, walkWindow.bounds)) {
+            walkFixedElements.add(new Rect(bounds));
+        }
+    };
+    // Target of the subtree walk in progress
+    private LongObjectMap<ImageViewInfo> subtreeViews;
+    private Set<Rect> subtreeSeen;
+    private WindowCache subtreeWindow;
+    private final TreeWalker.Visitor subtreeVisitor = (node, depth, pathIds, bounds) ->
+            collectTargetView(node, depth, pathIds, bounds, subtreeViews, subtreeSeen, subtreeWindow);
+
+    private final List<AccessibilityNodeInfo> pendingRefreshSources = new ArrayList<>();
+    private long fullRefreshCount = 0;
+    private long incrementalRefreshCount = 0;
+    private long skippedRefreshCount = 0;
+
+    // Verdicts keyed by perceptual hash of the captured region
+    private static final int VERDICT_CACHE_SIZE = 512;
+    private final VerdictCache verdictCache = new VerdictCache(VERDICT_CACHE_SIZE);
+
+    // On-disk verdicts that survive service restarts
+    private static final String VERDICT_STORE_FILE = "verdicts.bin";
+    private volatile VerdictStore verdictStore;
+
+    // Batched native calls; buffers are only touched on the classification thread
+    private static final int MAX_BATCH_REGIONS = 16;
+    private final int[] batchRects = new int[MAX_BATCH_REGIONS * 4];
+    private final long[] batchHashes = new long[MAX_BATCH_REGIONS];
+    private final ClassificationResults batchResults = new ClassificationResults(MAX_BATCH_REGIONS);
+    private final ViewState[] batchMisses = new ViewState[MAX_BATCH_REGIONS];
+    private final long[] batchMissHashes = new long[MAX_BATCH_REGIONS];
+    private final long[] batchTrackIds = new long[MAX_BATCH_REGIONS];
+
+    // Face tracking: faces of video and scrolling views are followed natively between
+    // classifications, and the face detector only re-runs when tracking loses them
+    private static final String PREF_FACE_TRACKING = "face_tracking";
+    private volatile boolean faceTrackingEnabled = true;
+    private final AtomicLong detectorRuns = new AtomicLong(0);
+    private final AtomicLong trackedRegions = new AtomicLong(0);
+
+    // Whole-frame detection: dense batches run the face detector once over the area covering all
+    // their views instead of once per view. The benchmark classifies each batch both ways.
+    private static final String PREF_FRAME_DETECTION = "frame_detection";
+    private static final String PREF_FRAME_DETECTION_BENCHMARK = "frame_detection_benchmark";
+    private static final int FRAME_DETECTION_MIN_REGIONS = FrameDetectionBenchmark.DENSE_REGIONS;
+    private volatile boolean frameDetectionEnabled = false;
+    private volatile boolean frameBenchmarkEnabled = false;
+    private final FrameDetectionBenchmark frameBenchmark = new FrameDetectionBenchmark();
+
+    // Change detection: exact per-tile hashes of every processed frame, compared with the pixels
+    // each view was last classified from. Inference thread only, apart from the flags.
+    private static final String PREF_CONTENT_WATCH = "content_watch";
+    private static final int TILE_SIZE = 32; // capture px
+    private static final long CONTENT_RECHECK_INTERVAL = 1000; // ms, per view
+    private static final long WATCH_FRAME_INTERVAL = 1000; // ms
+    private final TileTracker tileTracker = new TileTracker(TILE_SIZE);
+    private final LongObjectMap<RegionWatch> regionWatches = new LongObjectMap<>();
+    private final int[] captureRect = new int[4];
+    private long processedFrames = 0;
+    private volatile boolean contentWatchEnabled = true;
+    private final AtomicBoolean watchScheduled = new AtomicBoolean(false);
+    private final Runnable watchFrameRunnable = () -> {
+        watchScheduled.set(false);
+        if (active && !captureScheduler.hasDemand()) {
+            captureScheduler.requestWatchFrame();
+        }
+    };
+    private final AtomicLong regionsReused = new AtomicLong(0);
+    private final AtomicLong contentChanges = new AtomicLong(0);
+
+    // Video mode: video views are re-sampled periodically within a per-view budget
+    private static final String PREF_VIDEO_MODE = "video_mode";
+    private static final String PREF_VIDEO_SAMPLE_INTERVAL = "video_sample_interval_ms";
+    private static final String PREF_VIDEO_BUDGET = "video_inferences_per_minute";
+    private static final long DEFAULT_VIDEO_SAMPLE_INTERVAL = 2000; // ms
+    private static final int DEFAULT_VIDEO_BUDGET = 20; // per view and minute
+    private volatile boolean videoModeEnabled = true;
+    // Replaced on connect with the configured rates; inference thread only after that
+    private volatile VideoSampler videoSampler = new VideoSampler(DEFAULT_VIDEO_SAMPLE_INTERVAL, DEFAULT_VIDEO_BUDGET);
+
+    // Pre-built verdict strings so applying a result never allocates
+    private static final String TEXT_SAFE = "true";
+    private static final String TEXT_BLOCKED = "false";
+    private static final String TEXT_ERROR = "ERROR";
 
     // Classification threshold
     private static final int VISIBILITY_THRESHOLD = 60; // Only classify images >60% visible
@@ -130,10 +343,16 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         windowManager = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
         handler = new Handler(Looper.getMainLooper());
 
+        ingestStage = PipelineStage.start("EventIngest", android.os.Process.THREAD_PRIORITY_DEFAULT, INGEST_QUEUE_CAPACITY);
+        treeStage = PipelineStage.start("TreeSnapshot", android.os.Process.THREAD_PRIORITY_DEFAULT, TREE_QUEUE_CAPACITY);
+        treeHandler = treeStage.handler();
+        frameStage = PipelineStage.start("FrameAcquire", android.os.Process.THREAD_PRIORITY_DEFAULT, FRAME_QUEUE_CAPACITY);
         // Background thread for processing
-        android.os.HandlerThread backgroundThread = new android.os.HandlerThread("ImageClassificationThread");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
+        inferenceStage = PipelineStage.start("ImageClassificationThread", android.os.Process.THREAD_PRIORITY_DEFAULT,
+                INFERENCE_QUEUE_CAPACITY);
+        backgroundHandler = inferenceStage.handler();
+        renderStage = PipelineStage.onMainThread("OverlayRender", RENDER_QUEUE_CAPACITY);
+        treeHandler.post(this::updateScreenMetrics);
 
         mediaProjectionManager = (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
 
@@ -157,9 +376,18 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         }
         stopMonitoringRunnable = () -> {
             isScrollMonitoring = false;
+            scrollPredictor.reset();
             Log.d(TAG, "Stopped scroll monitoring");
+            if (scrollResyncPending && active) {
+                // Scrolling settled: replace the translated bounds with the real tree
+                scrollResyncPending = false;
+                invalidateWindow(scrollWindowId, false);
+                eventCoalescer.request(EventCoalescer.PRIORITY_CONTENT);
+            }
         };
 
+        walkFrameCallback = frameTimeNanos -> continueFullWalk();
+
         frameCallback = frameTimeNanos -> {
             if (active) {
                 updateImageViewVisibilityFast();
@@ -180,9 +408,30 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         // Receive commands from the Activity
         registerReceiver(cmdReceiver, new IntentFilter(ACTION_SET_ACTIVE));
 
+        // Size the native worker pool and load/warm the models before the first frame arrives
+        SharedPreferences prefs = getSharedPreferences(PREFS, MODE_PRIVATE);
+        incrementalRefreshEnabled = prefs.getBoolean(PREF_INCREMENTAL_REFRESH, true);
+        contentWatchEnabled = prefs.getBoolean(PREF_CONTENT_WATCH, true);
+        videoModeEnabled = prefs.getBoolean(PREF_VIDEO_MODE, true);
+        faceTrackingEnabled = prefs.getBoolean(PREF_FACE_TRACKING, true);
+        frameDetectionEnabled = prefs.getBoolean(PREF_FRAME_DETECTION, false);
+        frameBenchmarkEnabled = prefs.getBoolean(PREF_FRAME_DETECTION_BENCHMARK, false);
+        videoSampler = new VideoSampler(prefs.getLong(PREF_VIDEO_SAMPLE_INTERVAL, DEFAULT_VIDEO_SAMPLE_INTERVAL),
+                prefs.getInt(PREF_VIDEO_BUDGET, DEFAULT_VIDEO_BUDGET));
+        serviceConnectedTime = SystemClock.elapsedRealtime();
+        startModelWarmUp();
+
+        // Map the persistent verdict store; only the header is read here
+        if (verdictStore == null) {
+            verdictStore = VerdictStore.open(new File(getFilesDir(), VERDICT_STORE_FILE));
+            if (verdictStore != null) {
+                final VerdictStore store = verdictStore;
+                backgroundHandler.post(store::compact);
+            }
+        }
+
         // If user intended it ON previously, try to resume (if we still have MP data)
-        boolean userWantsActive = getSharedPreferences(PREFS, MODE_PRIVATE)
-                .getBoolean(PREF_USER_WANTS_ACTIVE, false);
+        boolean userWantsActive = prefs.getBoolean(PREF_USER_WANTS_ACTIVE, false);
         if (userWantsActive) {
             Log.d(TAG, "User wants active. Attempting to activate.");
             setActive(true);
@@ -226,9 +475,12 @@ public class ImageViewAccessibilityService extends AccessibilityService {
             }
 
             // We’re good to start capturing
+            startModelWarmUp();
             setupScreenCapture();
             startOverlayAndLoop();
             active = true;
+            // The display was parked while inactive; resume it if views are already waiting
+            updateCaptureDemand();
             Log.d(TAG, "Feature ACTIVATED");
 
         } else {
@@ -240,18 +492,98 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         }
     }
 
+    /**
+     * Configure the inference pool and warm up the models on a dedicated thread, so neither
+     * the first classified frame nor the classification thread pays for model loading.
+     * No-op while a warm-up is running or once models are ready.
+     */
+    private synchronized void startModelWarmUp() {
+        if (modelsReady || (warmUpThread != null && warmUpThread.isAlive())) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (lastWarmUpAttempt != 0 && now - lastWarmUpAttempt < WARM_UP_RETRY_INTERVAL) {
+            return;
+        }
+        lastWarmUpAttempt = now;
+
+        SharedPreferences prefs = getSharedPreferences(PREFS, MODE_PRIVATE);
+        final int inferenceThreads = prefs.getInt(PREF_INFERENCE_THREADS,
+                Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+        final int cpuPolicy = prefs.getInt(PREF_INFERENCE_CPU_POLICY, CPU_POLICY_BIG);
+        final boolean genderEarlyExit = prefs.getBoolean(PREF_GENDER_EARLY_EXIT, true);
+        final int genderMaxFaces = prefs.getInt(PREF_GENDER_MAX_FACES, 0);
+        final AssetManager assets = getAssets();
+
+        warmUpThread = new Thread(() -> {
+            try {
+                // Workers are created here and inherit this thread's priority, so start them first
+                ConfigureInference(inferenceThreads, cpuPolicy);
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                ConfigureGender(genderEarlyExit, genderMaxFaces);
+                long warmUpMs = WarmUpModels(assets);
+                if (warmUpMs < 0) {
+                    Log.e(TAG, "Model warm-up failed, will retry");
+                    return;
+                }
+                timeToReadyMs = SystemClock.elapsedRealtime() - serviceConnectedTime;
+                modelsReady = true;
+                backgroundHandler.post(this::updateCaptureDemand);
+                Log.i(TAG, "Models ready: warm-up " + warmUpMs + "ms, time to ready " + timeToReadyMs +
+                        "ms (" + inferenceThreads + " threads, cpu policy " + cpuPolicy + ")");
+            } catch (Throwable t) {
+                Log.e(TAG, "Error warming up models: " + t.getMessage(), t);
+            }
+        }, "ModelWarmUp");
+        warmUpThread.start();
+    }
+
     private void startOverlayAndLoop() {
         // Start any overlay UI if you have it (overlayView)
         // if (overlayView == null) { overlayView = new OverlayView(this); windowManager.addView(...); }
-        isScrollMonitoring = true;
-        Choreographer.getInstance().postFrameCallback(frameCallback);
+        treeHandler.post(() -> {
+            isScrollMonitoring = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        });
     }
 
     private void stopOverlayAndLoop() {
-        isScrollMonitoring = false;
-        try { Choreographer.getInstance().removeFrameCallback(frameCallback); } catch (Throwable ignored) {}
+        // Tree state belongs to the tree stage
+        treeHandler.post(() -> {
+            isScrollMonitoring = false;
+            try { Choreographer.getInstance().removeFrameCallback(frameCallback); } catch (Throwable ignored) {}
+            cancelFullWalk();
+            treeHandler.removeCallbacks(deferredScanRunnable);
+            eventCoalescer.cancel();
+            Log.d(TAG, eventCoalescer.getStatsSummary());
+            logPipelineStats();
+        });
+        pendingOverlay.set(null);
         // Remove overlay if you added it
-        if (overlayView != null) { windowManager.removeView(overlayView); overlayView = null; }
+        if (overlayView != null) {
+            Log.d(TAG, overlayView.getStatsSummary());
+            windowManager.removeView(overlayView);
+            overlayView = null;
+        }
+    }
+
+    /**
+     * Log the pipeline and capture counters; at scan end and teardown, never per frame
+     */
+    private void logPipelineStats() {
+        Log.d(TAG, getSnapshotStatsSummary());
+        Log.d(TAG, verdictCache.getStatsSummary());
+        Log.d(TAG, captureScheduler.getStatsSummary());
+        // Tile and video counters are plain fields of the inference stage; a stale read is fine here
+        Log.d(TAG, tileTracker.getStatsSummary() + ", " + regionsReused.get() + " verdicts reused, " +
+                contentChanges.get() + " content changes");
+        Log.d(TAG, videoSampler.getStatsSummary());
+        Log.d(TAG, "Face detector: " + detectorRuns.get() + " runs, " + trackedRegions.get() + " regions tracked instead");
+        Log.d(TAG, ingestStage.getStatsSummary());
+        Log.d(TAG, treeStage.getStatsSummary());
+        Log.d(TAG, frameStage.getStatsSummary());
+        Log.d(TAG, inferenceStage.getStatsSummary());
+        Log.d(TAG, renderStage.getStatsSummary());
     }
 
     // -------- MediaProjection & capture --------
@@ -263,26 +595,17 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         }
         try {
             DisplayMetrics metrics = getResources().getDisplayMetrics();
-
-            imageReader = ImageReader.newInstance(
-                    metrics.widthPixels,
-                    metrics.heightPixels,
-                    PixelFormat.RGBA_8888,
-                    2
-            );
-
-            imageReader.setOnImageAvailableListener(reader -> {
-                if (!active) {
-                    // Drain to avoid backpressure if needed
-                    try {
-                        Image img = reader.acquireLatestImage();
-                        if (img != null) img.close();
-                    } catch (Throwable ignored) {}
-                    return;
-                }
-                backgroundHandler.post(() -> processAvailableImage(reader));
-            }, backgroundHandler);
-
+            SharedPreferences prefs = getSharedPreferences(PREFS, MODE_PRIVATE);
+            captureDivisor = Math.max(1, Math.min(MAX_CAPTURE_SCALE_DIVISOR,
+                    prefs.getInt(PREF_CAPTURE_SCALE_DIVISOR, 1)));
+            scaleBenchmarkEnabled = captureDivisor == 1 && prefs.getBoolean(PREF_CAPTURE_SCALE_BENCHMARK, false);
+            screenWidth = metrics.widthPixels;
+            screenHeight = metrics.heightPixels;
+            captureWidth = Math.max(1, metrics.widthPixels / captureDivisor);
+            captureHeight = Math.max(1, metrics.heightPixels / captureDivisor);
+            Log.d(TAG, "Capturing at " + captureWidth + "x" + captureHeight + " (1/" + captureDivisor + ")");
+
+            imageReader = createImageReader();
             createVirtualDisplay();
 
             // Now that we are actually capturing, run as foreground (Q+)
@@ -294,18 +617,73 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         }
     }
 
+    private ImageReader createImageReader() {
+        ImageReader reader = ImageReader.newInstance(
+                captureWidth,
+                captureHeight,
+                PixelFormat.RGBA_8888,
+                2
+        );
+
+        reader.setOnImageAvailableListener(r -> {
+            captureScheduler.recordFrameProduced();
+            // A refusal means an acquisition is already queued, and it takes the newest frame
+            frameStage.submit(() -> acquireFrame(r));
+        }, frameStage.handler());
+        return reader;
+    }
+
+    /**
+     * Follow a rotation or display change: capture size and screen mapping were taken from the
+     * metrics at setup, so resize the virtual display onto a reader of the new size. Main thread.
+     */
+    private void resizeScreenCapture() {
+        if (virtualDisplay == null || imageReader == null) {
+            return;
+        }
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        if (metrics.widthPixels == screenWidth && metrics.heightPixels == screenHeight) {
+            return;
+        }
+        try {
+            captureScheduler.detach();
+            screenWidth = metrics.widthPixels;
+            screenHeight = metrics.heightPixels;
+            captureWidth = Math.max(1, metrics.widthPixels / captureDivisor);
+            captureHeight = Math.max(1, metrics.heightPixels / captureDivisor);
+            Log.d(TAG, "Capture resized to " + captureWidth + "x" + captureHeight + " (1/" + captureDivisor + ")");
+
+            ImageReader oldReader = imageReader;
+            oldReader.setOnImageAvailableListener(null, null);
+            imageReader = createImageReader();
+            virtualDisplay.resize(captureWidth, captureHeight, Math.max(1, metrics.densityDpi / captureDivisor));
+            virtualDisplay.setSurface(imageReader.getSurface());
+            captureScheduler.attach(virtualDisplay, imageReader.getSurface());
+            updateCaptureDemand();
+
+            // Close the old reader only once the frame stage has let go of it and every frame it
+            // handed to inference is done
+            frameStage.handler().post(() -> inferenceStage.handler().post(oldReader::close));
+        } catch (Exception e) {
+            Log.e(TAG, "Error resizing screen capture: " + e.getMessage(), e);
+        }
+    }
+
     private void createVirtualDisplay() {
         try {
             DisplayMetrics metrics = getResources().getDisplayMetrics();
             virtualDisplay = mediaProjection.createVirtualDisplay(
                     "ScreenCapture",
-                    metrics.widthPixels, metrics.heightPixels, metrics.densityDpi,
+                    captureWidth, captureHeight, Math.max(1, metrics.densityDpi / captureDivisor),
                     DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
                     imageReader.getSurface(), null, null
             );
 
             if (virtualDisplay != null) {
                 Log.d(TAG, "Virtual display created");
+                // Park the display until some view actually needs a frame
+                captureScheduler.attach(virtualDisplay, imageReader.getSurface());
+                updateCaptureDemand();
             } else {
                 Log.e(TAG, "Failed to create virtual display - null result");
             }
@@ -315,6 +693,8 @@ public class ImageViewAccessibilityService extends AccessibilityService {
     }
 
     private void teardownScreenCapture() {
+        captureScheduler.detach();
+        Log.d(TAG, captureScheduler.getStatsSummary());
         try {
             if (virtualDisplay != null) {
                 virtualDisplay.release();
@@ -374,156 +754,544 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         }
     }
 
-    private void processAvailableImage(ImageReader reader) {
-        Log.d(TAG, "Processing available image from reader");
-        Image image = null;
+    /**
+     * Frame stage: take the newest frame and hand it to inference, or drain it without demand.
+     * While inference is busy the frame stays in the reader and is fetched once it is free.
+     */
+    private void acquireFrame(ImageReader reader) {
+        if (reader != imageReader) {
+            // Replaced by a resize, closes once its frames are processed
+            return;
+        }
         try {
-            image = reader.acquireLatestImage();
-            Log.d(TAG, "Acquired latest image: " + (image != null ? "success" : "null"));
-            if (image != null) {
-                Bitmap screenBitmap = imageTobitmap(image);
-                if (screenBitmap != null) {
-                    Log.d(TAG, "Successfully converted image to bitmap, size: " + screenBitmap.getWidth() + "x" + screenBitmap.getHeight());
-                    // Run classification on the background thread
-                    processScreenCapture(screenBitmap);
-                } else {
-                    Log.w(TAG, "Failed to convert image to bitmap");
-                }
+            if (!active || !captureScheduler.hasDemand()) {
+                // Drain to avoid backpressure if needed
+                Image img = reader.acquireLatestImage();
+                if (img != null) img.close();
+                captureScheduler.recordFrameDrained();
+                return;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing captured image: " + e.getMessage(), e);
-        } finally {
-            if (image != null) {
+            if (!inferenceStage.hasCapacity()) {
+                frameWaiting = true;
+                return;
+            }
+            frameWaiting = false;
+            Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            // Once this frame is done, fetch whichever frame arrived while it ran
+            if (!inferenceStage.submit(() -> processAvailableImage(image), () -> {
+                if (frameWaiting) {
+                    frameStage.submit(() -> acquireFrame(reader));
+                }
+            })) {
                 image.close();
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Error acquiring captured image: " + e.getMessage(), e);
         }
     }
 
-    private Bitmap imageTobitmap(Image image) {
-        Log.d(TAG, "Converting image to bitmap...");
+    /**
+     * Inference stage: classify the views visible in one frame
+     */
+    private void processAvailableImage(Image image) {
         try {
-            Image.Plane[] planes = image.getPlanes();
-            Log.d(TAG, "Image planes obtained: " + planes.length);
-            Image.Plane plane = planes[0];
-            ByteBuffer buffer = plane.getBuffer();
-            
-            int pixelStride = plane.getPixelStride();
-            int rowStride = plane.getRowStride();
-            int rowPadding = rowStride - pixelStride * image.getWidth();
-            
-            Bitmap bitmap = Bitmap.createBitmap(
-                image.getWidth() + rowPadding / pixelStride,
-                image.getHeight(),
-                Bitmap.Config.ARGB_8888
-            );
-            
-            bitmap.copyPixelsFromBuffer(buffer);
-            Bitmap result = Bitmap.createBitmap(bitmap, 0, 0, image.getWidth(), image.getHeight());
-            Log.d(TAG, "Successfully created bitmap: " + result.getWidth() + "x" + result.getHeight());
-            return result;
+            // Hand the plane straight to native code; the image stays open until we are done
+            Image.Plane plane = image.getPlanes()[0];
+            processScreenCapture(plane.getBuffer(), image.getWidth(), image.getHeight(),
+                    plane.getRowStride(), plane.getPixelStride());
         } catch (Exception e) {
-            Log.e(TAG, "Error converting image to bitmap: " + e.getMessage(), e);
-            return null;
+            Log.e(TAG, "Error processing captured image: " + e.getMessage(), e);
+        } finally {
+            image.close();
         }
     }
 
-    private void processScreenCapture(Bitmap screenBitmap) {
-        Log.d(TAG, "Starting screen capture processing with bitmap dimensions: " + screenBitmap.getWidth() + "x" + screenBitmap.getHeight());
+    private void processScreenCapture(ByteBuffer frame, int width, int height, int rowStride, int pixelStride) {
+        captureScheduler.finishWatchFrame();
+        if (!modelsReady) {
+            // Leave views unclassified; capture resumes once warm-up is done
+            Log.d(TAG, "Models still warming up, skipping frame");
+            captureScheduler.recordFrameWasted();
+            updateCaptureDemand();
+            return;
+        }
+        if (mergePending.get()) {
+            // The previous frame's verdicts are not in the snapshot yet; classifying now would repeat them
+            captureScheduler.recordFrameWasted();
+            return;
+        }
+        Log.d(TAG, "Starting screen capture processing with frame dimensions: " + width + "x" + height);
+        final ViewSnapshot snapshot = viewSnapshot;
+        final VideoSampler sampler = videoSampler;
         try {
-            List<ImageViewInfo> toClassify = new ArrayList<>();
-            synchronized (this) {
-                Log.d(TAG, "Checking cached image views for classification. Total views: " + cachedImageViews.size());
-                for (ImageViewInfo info : cachedImageViews.values()) {
-                    if (info.visibilityPercentage > VISIBILITY_THRESHOLD && !info.isClassified) {
-                        // Mark as processing by setting isClassified to false, but keep old text
-                        info.isClassified = false;
-                        toClassify.add(info);
-                        Log.d(TAG, "Added view for classification: " + info.bounds + " (Visibility: " + info.visibilityPercentage + "%)");
+            long[] tiles = tileTracker.beginFrame(width, height);
+            // Without fresh hashes no verdict may be reused and no watch moved to this frame
+            boolean tilesValid = ComputeTileHashes(frame, width, height, rowStride, pixelStride, TILE_SIZE, tiles);
+            if (tilesValid) {
+                tileTracker.endFrame();
+            } else {
+                Log.w(TAG, "Tile hashing failed, frame not used for change detection");
+                tileTracker.discardFrame();
+            }
+            long frameNumber = ++processedFrames;
+            long now = System.currentTimeMillis();
+
+            List<ViewState> toClassify = new ArrayList<>();
+            final List<InferenceResult> results = new ArrayList<>();
+            Log.d(TAG, "Checking snapshot " + snapshot.epoch + " (" + snapshot.size() + " views), " +
+                    tileTracker.getChangedTiles() + " tiles changed");
+            for (int i = 0, n = snapshot.size(); i < n; i++) {
+                ViewState state = snapshot.get(i);
+                if (state.visibilityPercentage <= VISIBILITY_THRESHOLD) {
+                    continue;
+                }
+                mapToCapture(state.bounds, width, height, captureRect, 0);
+                long signature = tileTracker.signature(captureRect[0], captureRect[1], captureRect[2], captureRect[3]);
+                RegionWatch watch = regionWatches.get(state.viewId);
+                boolean sameRect = watch != null && watch.isAt(captureRect);
+
+                if (state.needsClassification(VISIBILITY_THRESHOLD)) {
+                    if (sameRect && signature != 0 && watch.signature == signature && watch.result != null) {
+                        // Same pixels as its last verdict, e.g. a re-check after a visibility change
+                        results.add(watch.result.reuse());
+                        regionsReused.incrementAndGet();
+                        Log.d(TAG, "Reused verdict for unchanged " + state.bounds);
+                    } else {
+                        toClassify.add(state);
+                        if (tilesValid) {
+                            watch = watchRegion(state.viewId, watch, signature, now);
+                        }
+                        if (state.video && videoModeEnabled) {
+                            // Layout changed: a fresh judgment, not a sample to smooth against the old verdict
+                            sampler.resetVerdict(state.viewId);
+                            sampler.onSampled(state.viewId, now, frameNumber);
+                        }
+                        Log.d(TAG, "Added view for classification: " + state.bounds + " (Visibility: " + state.visibilityPercentage + "%)");
+                    }
+                } else if (state.video && videoModeEnabled) {
+                    // Video content changes every frame; sample it on a schedule instead of on change.
+                    // Blocked videos are held until their layout changes: the capture shows our box
+                    // over them, and sampling that would read as safe and unblock them.
+                    if (state.isClassified && state.verdict != ClassificationResults.VERDICT_BLOCKED
+                            && sampler.isDue(state.viewId, now, frameNumber)) {
+                        toClassify.add(state);
+                        sampler.onSampled(state.viewId, now, frameNumber);
+                        if (tilesValid) {
+                            watch = watchRegion(state.viewId, watch, signature, now);
+                        }
+                    }
+                } else if (contentWatchEnabled && tilesValid && state.isClassified
+                        && state.verdict == ClassificationResults.VERDICT_SAFE) {
+                    // Only safe views: the capture includes our overlay, so the box over a blocked view
+                    // would read as a content change and get re-classified as safe. Blocked views are
+                    // released by the layout and scroll paths instead.
+                    if (!sameRect) {
+                        // First look, or moved: its current pixels become the reference
+                        watch = watchRegion(state.viewId, watch, signature, now);
+                    } else if (signature != watch.signature && now - watch.checkTime >= CONTENT_RECHECK_INTERVAL) {
+                        // Pixels changed under an unchanged layout: carousel page, swapped image
+                        toClassify.add(state);
+                        contentChanges.incrementAndGet();
+                        watch = watchRegion(state.viewId, watch, signature, now);
+                        Log.d(TAG, "Content changed under unchanged layout: " + state.bounds);
                     }
                 }
+                if (watch != null) {
+                    watch.frame = frameNumber;
+                }
             }
+            sweepRegionWatches(snapshot.size(), frameNumber);
+            sampler.sweep(snapshot.size(), frameNumber);
             Log.d(TAG, "Found " + toClassify.size() + " views requiring classification");
 
-            for (ImageViewInfo info : toClassify) {
-                Log.d(TAG, "Cropping image for bounds: " + info.bounds);
-                Bitmap croppedImage = cropImageFromScreen(screenBitmap, info.bounds);
-                Log.d(TAG, "Crop result: " + (croppedImage != null ?
-                    croppedImage.getWidth() + "x" + croppedImage.getHeight() : "null"));
-                if (croppedImage == null) {
-                    Log.w(TAG, "Cropped image is null for bounds: " + info.bounds);
-                    continue;
+            if (toClassify.isEmpty() && results.isEmpty()) {
+                captureScheduler.recordFrameWasted();
+            } else {
+                int total = toClassify.size();
+                for (int base = 0; base < total; base += MAX_BATCH_REGIONS) {
+                    classifyBatch(toClassify, base, Math.min(MAX_BATCH_REGIONS, total - base), results,
+                            frame, width, height, rowStride, pixelStride);
+                }
+                // A watch keeps the signature of the frame its verdict came from
+                for (int i = 0, n = tilesValid ? results.size() : 0; i < n; i++) {
+                    InferenceResult result = results.get(i);
+                    RegionWatch watch = regionWatches.get(result.viewId);
+                    if (watch != null && result.verdict != ClassificationResults.VERDICT_ERROR) {
+                        watch.result = result;
+                    }
                 }
-                // Create a clean, standalone copy of the bitmap. This can prevent
-                // issues with native code that might not handle sub-bitmaps correctly.
-                Bitmap imageToClassify = croppedImage.copy(Bitmap.Config.ARGB_8888, false);
-                croppedImage.recycle(); // We have a copy, so we can recycle the original.
+                captureScheduler.recordFrameUsed();
+                // The tree stage owns the views; it merges the verdicts, republishes and re-evaluates demand
+                mergePending.set(true);
+                treeHandler.post(() -> mergeResults(snapshot.epoch, results));
+                return;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing screen capture: " + e.getMessage(), e);
+        }
+        // Pause the display if this frame settled every pending view
+        updateCaptureDemand();
+    }
 
-                if (imageToClassify == null) {
-                    Log.w(TAG, "Failed to create a copy of the cropped image for classification.");
-                    continue;
+    /**
+     * Remember the capture rect and tile signature a view is being judged on
+     */
+    private RegionWatch watchRegion(long viewId, RegionWatch watch, long signature, long now) {
+        if (watch == null) {
+            watch = new RegionWatch();
+            regionWatches.put(viewId, watch);
+        }
+        watch.left = captureRect[0];
+        watch.top = captureRect[1];
+        watch.right = captureRect[2];
+        watch.bottom = captureRect[3];
+        watch.signature = signature;
+        watch.checkTime = now;
+        return watch;
+    }
+
+    /**
+     * Drop watches of views not visible in this frame once they outnumber the snapshot
+     */
+    private void sweepRegionWatches(int views, long frameNumber) {
+        if (regionWatches.size() <= views * 2 + 16) {
+            return;
+        }
+        long[] stale = new long[regionWatches.size()];
+        int count = 0;
+        for (int slot = 0, n = regionWatches.capacity(); slot < n; slot++) {
+            RegionWatch watch = regionWatches.valueAt(slot);
+            if (watch != null && watch.frame != frameNumber) {
+                stale[count++] = regionWatches.keyAt(slot);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            regionWatches.remove(stale[i]);
+        }
+    }
+
+    /**
+     * Map screen bounds to the capture frame: mirroring keeps the aspect ratio, so the screen is
+     * scaled uniformly and centred in the frame. Writes l, t, r, b to out at offset.
+     */
+    private void mapToCapture(Rect bounds, int width, int height, int[] out, int offset) {
+        int sw = screenWidth > 0 ? screenWidth : width;
+        int sh = screenHeight > 0 ? screenHeight : height;
+        float scale = Math.min(width / (float) sw, height / (float) sh);
+        float offsetX = (width - sw * scale) / 2f;
+        float offsetY = (height - sh * scale) / 2f;
+        out[offset] = (int) Math.floor(offsetX + bounds.left * scale);
+        out[offset + 1] = (int) Math.floor(offsetY + bounds.top * scale);
+        out[offset + 2] = (int) Math.ceil(offsetX + bounds.right * scale);
+        out[offset + 3] = (int) Math.ceil(offsetY + bounds.bottom * scale);
+    }
+
+    /**
+     * Resume capture while a visible view still needs a verdict and the models can take it,
+     * otherwise detach the display surface so no frames are composited for us. While verdicts
+     * are on screen, a watch frame is let through now and then to catch swapped content.
+     */
+    private void updateCaptureDemand() {
+        boolean pending = false;
+        boolean watchable = false;
+        boolean videoVisible = false;
+        ViewSnapshot snapshot = viewSnapshot;
+        for (int i = 0, n = snapshot.size(); i < n; i++) {
+            ViewState state = snapshot.get(i);
+            if (state.needsClassification(VISIBILITY_THRESHOLD)) {
+                pending = true;
+                break;
+            }
+            if (state.isClassified && state.visibilityPercentage > VISIBILITY_THRESHOLD) {
+                watchable = true;
+                videoVisible |= state.video;
+            }
+        }
+        if (pending && !modelsReady) {
+            // Retries a failed warm-up; a successful one re-evaluates demand itself
+            startModelWarmUp();
+        }
+        captureScheduler.setDemand(active && pending && modelsReady);
+        boolean sampleVideo = videoVisible && videoModeEnabled;
+        if (!pending && watchable && (contentWatchEnabled || sampleVideo) && active && modelsReady
+                && watchScheduled.compareAndSet(false, true)) {
+            // Video views set the pace of watch frames while they are on screen
+            frameStage.handler().postDelayed(watchFrameRunnable,
+                    sampleVideo ? videoSampler.getIntervalMs() : WATCH_FRAME_INTERVAL);
+        }
+    }
+
+    /**
+     * Apply verdicts computed against snapshot epoch to the working views. A verdict from an
+     * older epoch is still merged if its view shows the same content (only bounds or visibility
+     * moved on); it is discarded if the view is gone or its content was replaced since.
+     */
+    private void mergeResults(long epoch, List<InferenceResult> results) {
+        mergePending.set(false);
+        boolean stale = epoch != viewSnapshot.epoch;
+        int merged = 0;
+        for (InferenceResult result : results) {
+            ImageViewInfo info = cachedImageViews.get(result.viewId);
+            if (info == null || info.contentEpoch > epoch) {
+                staleResultsDiscarded.incrementAndGet();
+                if (result.inferred) {
+                    inferencesWasted.incrementAndGet();
                 }
+                continue;
+            }
+            if (stale) {
+                staleResultsMerged.incrementAndGet();
+            }
+            info.contentHash = result.contentHash;
+            applyVerdict(info, result.verdict);
+            if (result.inferred) {
+                info.faceCount = result.faceCount;
+                info.maxFemaleScore = result.maxFemaleScore;
+            }
+            merged++;
+        }
+        resultsMerged.addAndGet(merged);
+        if (merged > 0) {
+            publishSnapshot();
+        }
+        Log.d(TAG, getSnapshotStatsSummary());
+        updateCaptureDemand();
+    }
 
-                try {
-                    Log.d(TAG, "Starting native ImageClassification for bounds: " + info.bounds);
-                    String classificationResult = ImageClassification(imageToClassify, getAssets());
-                    Log.d(TAG, "Classification completed. Raw result: " + classificationResult);
-                    Log.d(TAG, "Classification result: " + classificationResult);
-                    info.classificationResult = "true".equals(classificationResult);
-                    info.isClassified = true;
-                    info.classificationText = classificationResult;
-                    info.lastClassificationTime = System.currentTimeMillis();
-                    info.highestVisibilityPercentage = Math.max(info.highestVisibilityPercentage, info.visibilityPercentage);
-
-                    Log.d(TAG, "Classified image at " + info.bounds + ": " + classificationResult +
-                          " -> " + info.classificationResult);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error calling ImageClassification: " + e.getMessage(), e);
-                    info.classificationResult = false;
-                    info.isClassified = true;
-                    info.classificationText = "ERROR";
-                    info.lastClassificationTime = System.currentTimeMillis();
-                } finally {
-                    if (imageToClassify != null) {
-                        imageToClassify.recycle();
+    /**
+     * Get statistics on snapshot epochs and how classification results were merged
+     */
+    public String getSnapshotStatsSummary() {
+        return String.format(
+            "Snapshots: epoch %d, %d results merged (%d from stale epochs), %d discarded, %d inferences wasted",
+            viewSnapshot.epoch, resultsMerged.get(), staleResultsMerged.get(),
+            staleResultsDiscarded.get(), inferencesWasted.get()
+        );
+    }
+
+    /**
+     * Native inferences whose result was discarded because the view was gone or replaced
+     */
+    public long getWastedInferenceCount() {
+        return inferencesWasted.get();
+    }
+
+    /**
+     * Hash and classify up to MAX_BATCH_REGIONS views with one native call each,
+     * resolving verdict cache / store hits in between so only misses reach inference.
+     */
+    private void classifyBatch(List<ViewState> views, int offset, int count, List<InferenceResult> results,
+                               ByteBuffer frame, int width, int height, int rowStride, int pixelStride) {
+        for (int i = 0; i < count; i++) {
+            mapToCapture(views.get(offset + i).bounds, width, height, batchRects, i * 4);
+        }
+        ComputeRegionHashes(frame, width, height, rowStride, pixelStride, batchRects, count, batchHashes);
+
+        final VerdictStore store = verdictStore;
+        final VideoSampler sampler = videoSampler;
+        int misses = 0;
+        for (int i = 0; i < count; i++) {
+            ViewState state = views.get(offset + i);
+            // Same pixels as something we already classified? Reuse that verdict.
+            long hash = batchHashes[i];
+            if (hash != 0) {
+                Boolean cached = verdictCache.get(hash, state.packageHash);
+                if (cached == null && store != null) {
+                    int stored = store.get(hash, state.packageHash);
+                    if (stored != VerdictStore.MISS) {
+                        cached = stored == VerdictStore.SAFE;
+                        verdictCache.put(hash, state.packageHash, cached);
                     }
                 }
+                if (cached != null) {
+                    int verdict = cached ? ClassificationResults.VERDICT_SAFE : ClassificationResults.VERDICT_BLOCKED;
+                    if (state.video) {
+                        // Seen before, no inference spent
+                        sampler.refund(state.viewId);
+                        verdict = sampler.smooth(state.viewId, verdict);
+                    }
+                    results.add(new InferenceResult(state.viewId, hash, verdict));
+                    Log.d(TAG, "Verdict cache hit for " + state.bounds + ": " + cached);
+                    continue;
+                }
+            }
+            // Compact misses to the front of the rect buffer
+            if (misses != i) {
+                System.arraycopy(batchRects, i * 4, batchRects, misses * 4, 4);
             }
+            batchMisses[misses] = state;
+            // Only live and moving content is worth tracking, still views are classified once
+            batchTrackIds[misses] = state.video || state.scrolling ? state.viewId : 0;
+            batchMissHashes[misses++] = hash;
+        }
+
+        if (misses == 0) {
+            return;
+        }
 
-            if (!toClassify.isEmpty()) {
-                // Post UI updates to the main thread
-                final List<ImageViewInfo> imageViewsForOverlay = new ArrayList<>(cachedImageViews.values());
-                handler.post(() -> updateOverlay(imageViewsForOverlay));
+        boolean frameMode = frameDetectionEnabled && misses >= FRAME_DETECTION_MIN_REGIONS;
+        int framePasses = 0;
+        boolean written = false;
+        long started = System.nanoTime();
+        try {
+            if (frameMode) {
+                Log.d(TAG, "Starting native ClassifyFrame for " + misses + " regions");
+                // Tracked views are not followed in this mode; their tracks are dropped, not left to go stale
+                framePasses = ClassifyFrame(frame, width, height, rowStride, pixelStride, batchRects, misses,
+                        faceTrackingEnabled ? batchTrackIds : null, batchResults.buffer(), getAssets());
+                detectorRuns.addAndGet(framePasses);
+                written = framePasses > 0;
+            } else {
+                Log.d(TAG, "Starting native ClassifyRegions for " + misses + " regions");
+                written = ClassifyRegions(frame, width, height, rowStride, pixelStride, batchRects, misses,
+                        faceTrackingEnabled ? batchTrackIds : null, batchResults.buffer(), getAssets());
             }
-            
         } catch (Exception e) {
-            Log.e(TAG, "Error processing screen capture: " + e.getMessage(), e);
-        } finally {
-            if (screenBitmap != null && !screenBitmap.isRecycled()) {
-                screenBitmap.recycle();
+            Log.e(TAG, "Error calling " + (frameMode ? "ClassifyFrame" : "ClassifyRegions") + ": " + e.getMessage(), e);
+        }
+        if (!written) {
+            // The records may still hold the previous batch; never cache or persist those
+            batchResults.fillError(misses);
+        }
+        long batchMicros = (System.nanoTime() - started) / 1000;
+
+        for (int i = 0; i < misses; i++) {
+            ViewState state = batchMisses[i];
+            batchMisses[i] = null;
+            long hash = batchMissHashes[i];
+            int verdict = batchResults.verdict(i);
+            sampler.recordInference(state.video, batchResults.totalMicros(i));
+            int faceSource = batchResults.faceSource(i);
+            if (faceSource == ClassificationResults.FACE_SOURCE_DETECTOR) {
+                detectorRuns.incrementAndGet();
+            } else if (faceSource == ClassificationResults.FACE_SOURCE_TRACKER) {
+                trackedRegions.incrementAndGet();
+            }
+            results.add(new InferenceResult(state.viewId, hash,
+                    state.video ? sampler.smooth(state.viewId, verdict) : verdict,
+                    batchResults.faceCount(i), batchResults.maxFemaleScore(i)));
+            if (verdict != ClassificationResults.VERDICT_ERROR && hash != 0) {
+                boolean safe = verdict == ClassificationResults.VERDICT_SAFE;
+                verdictCache.put(hash, state.packageHash, safe);
+                if (store != null) {
+                    store.put(hash, state.packageHash, safe ? VerdictStore.SAFE : VerdictStore.BLOCKED);
+                }
             }
+            Log.d(TAG, "Classified image at " + state.bounds + ": verdict " + verdict +
+                  " faces=" + batchResults.faceCount(i) + (faceSource == ClassificationResults.FACE_SOURCE_TRACKER ? " (tracked)" : "") +
+                  " maxFemale=" + batchResults.maxFemaleScore(i) +
+                  " us(pre/detect/gender/total)=" + batchResults.preprocessMicros(i) + "/" +
+                  batchResults.detectMicros(i) + "/" + batchResults.genderMicros(i) + "/" + batchResults.totalMicros(i));
+        }
+
+        if (scaleBenchmarkEnabled) {
+            runScaleBenchmark(misses, frame, width, height, rowStride, pixelStride);
+        }
+        if (frameBenchmarkEnabled) {
+            runFrameBenchmark(misses, frameMode, framePasses, batchMicros, frame, width, height, rowStride, pixelStride);
         }
     }
 
-    private Bitmap cropImageFromScreen(Bitmap screenBitmap, Rect bounds) {
+    /**
+     * Classify the regions just classified again in the other detection mode (per crop or whole
+     * frame) and compare cost and verdicts, with per-crop verdicts as the reference. Opt-in.
+     */
+    private void runFrameBenchmark(int count, boolean frameMode, int framePasses, long micros,
+                                   ByteBuffer frame, int width, int height, int rowStride, int pixelStride) {
+        long started = System.nanoTime();
         try {
-            int left = Math.max(0, bounds.left);
-            int top = Math.max(0, bounds.top);
-            int right = Math.min(screenBitmap.getWidth(), bounds.right);
-            int bottom = Math.min(screenBitmap.getHeight(), bounds.bottom);
-            
-            int width = right - left;
-            int height = bottom - top;
-            
-            if (width > 0 && height > 0) {
-                return Bitmap.createBitmap(screenBitmap, left, top, width, height);
+            if (frameMode) {
+                // Untracked, so every crop pays its own detector pass
+                if (!ClassifyRegions(frame, width, height, rowStride, pixelStride, batchRects, count,
+                        null, benchmarkResults.buffer(), getAssets())) {
+                    return;
+                }
+            } else {
+                framePasses = ClassifyFrame(frame, width, height, rowStride, pixelStride, batchRects, count,
+                        null, benchmarkResults.buffer(), getAssets());
+                if (framePasses == 0) {
+                    return;
+                }
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error cropping image: " + e.getMessage(), e);
+            Log.e(TAG, "Error running frame detection benchmark: " + e.getMessage(), e);
+            return;
         }
-        return null;
+        long otherMicros = (System.nanoTime() - started) / 1000;
+
+        ClassificationResults crop = frameMode ? benchmarkResults : batchResults;
+        ClassificationResults whole = frameMode ? batchResults : benchmarkResults;
+        int cropPasses = 0;
+        for (int i = 0; i < count; i++) {
+            if (crop.faceSource(i) == ClassificationResults.FACE_SOURCE_DETECTOR) {
+                cropPasses++;
+            }
+            if (crop.verdict(i) != ClassificationResults.VERDICT_ERROR
+                    && whole.verdict(i) != ClassificationResults.VERDICT_ERROR) {
+                frameBenchmark.recordRegion(count, crop.verdict(i), crop.faceCount(i),
+                        whole.verdict(i), whole.faceCount(i));
+            }
+        }
+        frameBenchmark.recordBatch(count, cropPasses, frameMode ? otherMicros : micros,
+                framePasses, frameMode ? micros : otherMicros);
+        Log.i(TAG, frameBenchmark.getStatsSummary());
+    }
+
+    /**
+     * Re-classify the regions just classified at full resolution at every candidate capture
+     * divisor and compare verdicts. Costs several extra inference passes, so it is opt-in.
+     */
+    private void runScaleBenchmark(int count, ByteBuffer frame, int width, int height, int rowStride, int pixelStride) {
+        int references = 0;
+        for (int i = 0; i < count; i++) {
+            if (batchResults.verdict(i) != ClassificationResults.VERDICT_ERROR) {
+                scaleBenchmark.recordReference(batchResults.verdict(i), batchResults.totalMicros(i));
+                references++;
+            }
+        }
+        for (int divisor = ScaleBenchmark.MIN_DIVISOR; divisor <= ScaleBenchmark.MAX_DIVISOR; divisor++) {
+            boolean written = false;
+            try {
+                written = ClassifyRegionsDownscaled(frame, width, height, rowStride, pixelStride, batchRects, count,
+                        benchmarkResults.buffer(), getAssets(), divisor);
+            } catch (Exception e) {
+                Log.e(TAG, "Error calling ClassifyRegionsDownscaled: " + e.getMessage(), e);
+            }
+            if (!written) {
+                // This divisor and the ones after it get no sample of these regions
+                scaleBenchmark.recordSkipped(references * (ScaleBenchmark.MAX_DIVISOR - divisor + 1));
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                if (batchResults.verdict(i) == ClassificationResults.VERDICT_ERROR) {
+                    continue;
+                }
+                scaleBenchmark.recordScaled(divisor, batchResults.verdict(i), batchResults.faceCount(i),
+                        benchmarkResults.verdict(i), benchmarkResults.faceCount(i), benchmarkResults.totalMicros(i));
+            }
+        }
+        Log.i(TAG, scaleBenchmark.getStatsSummary());
+    }
+
+    private void applyVerdict(ImageViewInfo info, int verdict) {
+        info.verdict = verdict;
+        info.classificationResult = verdict == ClassificationResults.VERDICT_SAFE;
+        info.isClassified = true;
+        info.classificationText = verdict == ClassificationResults.VERDICT_SAFE ? TEXT_SAFE
+                : verdict == ClassificationResults.VERDICT_BLOCKED ? TEXT_BLOCKED : TEXT_ERROR;
+        info.lastClassificationTime = System.currentTimeMillis();
+        info.highestVisibilityPercentage = Math.max(info.highestVisibilityPercentage, info.visibilityPercentage);
     }
 
     private void triggerScreenCapture() {
+        if (Looper.myLooper() != Looper.getMainLooper() && mediaProjection == null) {
+            // Projection setup is lifecycle work and stays with setActive on the main thread
+            handler.post(this::triggerScreenCapture);
+            return;
+        }
         // Check if mediaProjection is already set up. If not, try to set it up.
         if (mediaProjection == null && sMediaProjectionResultData != null) {
             Log.d(TAG, "triggerScreenCapture: MediaProjection not set up, attempting now.");
@@ -537,10 +1305,10 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         } else if (mediaProjection == null) {
             Log.w(TAG, "triggerScreenCapture: Cannot start capture, MediaProjection data not available.");
         } else {
-            // With continuous capture, this method just acknowledges that the
-            // view hierarchy has changed. The next frame processed will use the
+            // Let frames flow again; the next frame processed will use the
             // updated view information.
             Log.d(TAG, "View hierarchy changed, awaiting next frame for classification.");
+            updateCaptureDemand();
         }
     }
 
@@ -556,6 +1324,8 @@ public class ImageViewAccessibilityService extends AccessibilityService {
                 return "TYPE_VIEW_FOCUSED";
             case AccessibilityEvent.TYPE_VIEW_SELECTED:
                 return "TYPE_VIEW_SELECTED";
+            case AccessibilityEvent.TYPE_WINDOWS_CHANGED:
+                return "TYPE_WINDOWS_CHANGED";
             default:
                 return "Unknown event type: " + eventType;
         }
@@ -571,28 +1341,114 @@ public class ImageViewAccessibilityService extends AccessibilityService {
             eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED ||
             eventType == AccessibilityEvent.TYPE_VIEW_SCROLLED ||
             eventType == AccessibilityEvent.TYPE_VIEW_FOCUSED ||
-            eventType == AccessibilityEvent.TYPE_VIEW_SELECTED) {
-            
-            if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
-                String packageName = event.getPackageName() != null ? event.getPackageName().toString() : "";
-                if (!packageName.equals(currentPackageName)) {
-                    currentPackageName = packageName;
-                    needsViewRefresh = true;
-                    handler.postDelayed(this::detectFixedElements, 100);
+            eventType == AccessibilityEvent.TYPE_VIEW_SELECTED ||
+            eventType == AccessibilityEvent.TYPE_WINDOWS_CHANGED) {
+            // The system recycles the event when we return; the ingest stage works on a copy
+            AccessibilityEvent copy = AccessibilityEvent.obtain(event);
+            if (!ingestStage.submit(() -> ingestEvent(copy))) {
+                copy.recycle();
+                onEventsDropped();
+            }
+        }
+    }
+
+    /**
+     * Ingest stage: read what the tree stage needs from an event, including the source node
+     * (an IPC call), and hand it over
+     */
+    private void ingestEvent(AccessibilityEvent event) {
+        EventRecord record = new EventRecord();
+        try {
+            int eventType = event.getEventType();
+            record.type = eventType;
+            record.windowId = event.getWindowId();
+            if (eventType == AccessibilityEvent.TYPE_WINDOWS_CHANGED) {
+                record.windowChanges = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                        ? event.getWindowChanges() : WINDOW_LAYOUT_CHANGES;
+            } else if (eventType == AccessibilityEvent.TYPE_VIEW_SCROLLED) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                    record.scrollDeltaX = event.getScrollDeltaX();
+                    record.scrollDeltaY = event.getScrollDeltaY();
+                }
+                record.scrollX = event.getScrollX();
+                record.scrollY = event.getScrollY();
+                record.eventTimeNanos = event.getEventTime() * 1_000_000L;
+                record.source = event.getSource();
+            } else if (eventType != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+                record.contentChangeTypes = event.getContentChangeTypes();
+                if (!isNonStructuralChange(record.contentChangeTypes)) {
+                    record.source = event.getSource();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading event: " + e.getMessage(), e);
+        } finally {
+            event.recycle();
+        }
+        if (!treeStage.submit(() -> handleEvent(record))) {
+            record.recycle();
+            onEventsDropped();
+        }
+    }
+
+    /**
+     * A full queue dropped events: every window may be out of date, so all are walked again
+     */
+    private void onEventsDropped() {
+        if (eventsDropped.compareAndSet(false, true)) {
+            treeHandler.post(() -> {
+                eventsDropped.set(false);
+                windowsChanged = true;
+                for (int i = 0; i < windowCaches.size(); i++) {
+                    windowCaches.valueAt(i).dirty = true;
                 }
-                needsViewRefresh = true;
-                updateImageViewVisibility();
+                eventCoalescer.request(EventCoalescer.PRIORITY_WINDOW);
+            });
+        }
+    }
+
+    // Text, description and state changes cannot add, remove or move images
+    private static boolean isNonStructuralChange(int changeTypes) {
+        return changeTypes != AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED && (changeTypes & ~NON_STRUCTURAL_CHANGES) == 0;
+    }
+
+    /**
+     * Tree stage: update window caches for one event; the actual refresh is coalesced per frame
+     */
+    private void handleEvent(EventRecord event) {
+        try {
+            if (!active) {
+                return;
+            }
+            int eventType = event.type;
+            eventCoalescer.onEvent(eventType);
+            if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+                // New screen in one window: only that window is walked again
+                invalidateWindow(event.windowId, true);
+                eventCoalescer.request(EventCoalescer.PRIORITY_WINDOW);
+            } else if (eventType == AccessibilityEvent.TYPE_WINDOWS_CHANGED) {
+                onWindowsChanged(event);
             } else if (eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED ||
                        eventType == AccessibilityEvent.TYPE_VIEW_FOCUSED ||
                        eventType == AccessibilityEvent.TYPE_VIEW_SELECTED) {
-                detectFixedElements();
-                needsViewRefresh = true;
-                updateImageViewVisibility();
+                // Fixed elements are only re-detected with full walks
+                int priority = eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+                        ? EventCoalescer.PRIORITY_CONTENT : EventCoalescer.PRIORITY_FOCUS;
+                if (scrollResyncPending) {
+                    // Mid-scroll: no tree queries, the re-sync when scrolling settles picks this up
+                    skippedRefreshCount++;
+                } else if (!queueSubtreeRefresh(event, priority)) {
+                    invalidateWindow(event.windowId, false);
+                    eventCoalescer.request(priority);
+                }
             } else if (eventType == AccessibilityEvent.TYPE_VIEW_SCROLLED) {
-                updateImageViewVisibilityFast();
+                scrollResyncPending = true;
+                scrollWindowId = event.windowId;
+                // Overlays follow on the scroll monitor's next frame
+                translateForScroll(event);
                 
-                handler.removeCallbacks(stopMonitoringRunnable);
-                handler.postDelayed(stopMonitoringRunnable, SCROLL_MONITOR_DURATION);
+                treeHandler.removeCallbacks(stopMonitoringRunnable);
+                treeHandler.postDelayed(stopMonitoringRunnable, SCROLL_MONITOR_DURATION);
                 
                 if (!isScrollMonitoring) {
                     isScrollMonitoring = true;
@@ -600,6 +1456,8 @@ public class ImageViewAccessibilityService extends AccessibilityService {
                     Choreographer.getInstance().postFrameCallback(frameCallback);
                 }
             }
+        } finally {
+            event.recycle();
         }
     }
 
@@ -609,20 +1467,19 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         }
         
         try {
-            List<Rect> fixedElements = cachedFixedElements.get(currentPackageName);
-            if (fixedElements == null) {
-                fixedElements = new ArrayList<>();
-            }
-            
             boolean needsClassification = false;
-            for (ImageViewInfo info : cachedImageViews.values()) {
-                int oldVisibility = info.visibilityPercentage;
-                info.visibilityPercentage = calculateVisibility(info.bounds, fixedElements);
+            LongObjectMap<ImageViewInfo> views = cachedImageViews;
+            for (int slot = 0, n = views.capacity(); slot < n; slot++) {
+                ImageViewInfo info = views.valueAt(slot);
+                if (info == null) {
+                    continue;
+                }
+                info.visibilityPercentage = calculateVisibility(info.bounds, occludersFor(info.windowId));
                 
                 if (info.visibilityPercentage > info.highestVisibilityPercentage * 1.1) {
                    info.highestVisibilityPercentage = info.visibilityPercentage;
                    if (info.isClassified) {
-                       info.isClassified = false;
+                       invalidateVerdict(info);
                        needsClassification = true;
                    }
                 }
@@ -631,7 +1488,7 @@ public class ImageViewAccessibilityService extends AccessibilityService {
                 }
             }
 
-            updateOverlay(new ArrayList<>(cachedImageViews.values()));
+            publishSnapshot();
             
             if (needsClassification) {
                 triggerScreenCapture();
@@ -644,80 +1501,255 @@ public class ImageViewAccessibilityService extends AccessibilityService {
 
     private void updateImageViewVisibility() {
         if (isUpdating) return;
-        
-        long now = System.currentTimeMillis();
-        if (!needsViewRefresh && !cachedImageViews.isEmpty() && 
-            (now - lastViewCacheTime) < VIEW_CACHE_DURATION) {
+        treeHandler.removeCallbacks(deferredScanRunnable);
+
+        if (windowsChanged) {
+            syncWindows();
+        }
+
+        // Walk the dirty windows topmost first, a bounded number per event
+        walkQueue.clear();
+        for (int i = 0; i < windowCaches.size(); i++) {
+            WindowCache window = windowCaches.valueAt(i);
+            if (window.dirty) {
+                walkQueue.add(window);
+            }
+        }
+        if (walkQueue.isEmpty()) {
             updateImageViewVisibilityFast();
             return;
         }
-        
+        Collections.sort(walkQueue, (a, b) -> Integer.compare(b.layer, a.layer));
+        if (walkQueue.size() > MAX_WINDOWS_PER_SCAN) {
+            windowsDeferredCount += walkQueue.size() - MAX_WINDOWS_PER_SCAN;
+            walkQueue.subList(MAX_WINDOWS_PER_SCAN, walkQueue.size()).clear();
+        }
+
         isUpdating = true;
-        
-        handler.post(() -> {
-            AccessibilityNodeInfo rootNode = null;
-            try {
-                rootNode = getRootInActiveWindow();
-                if (rootNode == null) {
-                    Log.w(TAG, "Root node is null");
-                    isUpdating = false;
-                    return;
-                }
+        treeHandler.post(this::startNextWindowWalk);
+    }
 
-                Map<String, ImageViewInfo> imageViews = new HashMap<>();
-                Set<Rect> seen = new HashSet<>();
-                Set<AccessibilityNodeInfo> visited = new HashSet<>();
-                
-                findAllViewsEnhanced(rootNode, imageViews, seen, visited, 0, "r");
-                
-                Log.d(TAG, "Found " + imageViews.size() + " Views (ImageViews/SurfaceViews/VideoViews) in hierarchy");
-                
-                List<Rect> fixedElements = cachedFixedElements.get(currentPackageName);
-                if (fixedElements == null) {
-                    fixedElements = new ArrayList<>();
-                }
-                
-                boolean needsClassification = false;
-                for (ImageViewInfo info : imageViews.values()) {
-                    info.visibilityPercentage = calculateVisibility(info.bounds, fixedElements);
-                    
-                    if (info.visibilityPercentage > VISIBILITY_THRESHOLD) {
-                        ImageViewInfo existing = cachedImageViews.get(info.childPath);
-                        if (existing == null || !existing.isClassified) {
-                            needsClassification = true;
-                        } else if (existing.isClassified) {
-                           // Previously classified, check if it needs re-classification
-                           if (System.currentTimeMillis() - existing.lastClassificationTime > VIEW_CACHE_DURATION) {
-                               // Only reprocess if visibility has increased by at least 10%
-                               if (info.visibilityPercentage > existing.highestVisibilityPercentage * 1.1) {
-                                   needsClassification = true;
-                                   info.isClassified = false; // Will be picked up by processScreenCapture
-                               }
-                           }
-                        }
-                    }
-                }
+    /**
+     * Mark a window for a full walk. An unknown window means the window list is out of date.
+     * @param restartWalk cancel a walk of this window in progress, its content was replaced
+     */
+    private void invalidateWindow(int windowId, boolean restartWalk) {
+        WindowCache window = windowCaches.get(windowId);
+        if (window == null) {
+            windowsChanged = true;
+            return;
+        }
+        window.dirty = true;
+        if (restartWalk && walkWindow == window) {
+            cancelFullWalk();
+        }
+    }
 
-                cachedImageViews = imageViews;
-                lastViewCacheTime = System.currentTimeMillis();
-                needsViewRefresh = false;
+    /**
+     * Windows were added, removed, moved or restacked: re-list them on the next refresh.
+     * Focus and title changes leave every cache valid and cost nothing.
+     */
+    private void onWindowsChanged(EventRecord event) {
+        if ((event.windowChanges & WINDOW_LAYOUT_CHANGES) == 0) {
+            return;
+        }
+        windowsChanged = true;
+        eventCoalescer.request(EventCoalescer.PRIORITY_WINDOW);
+    }
 
-                updateOverlay(new ArrayList<>(imageViews.values()));
-                
-                if (needsClassification) {
-                    triggerScreenCapture();
-                }
-                
-                for (AccessibilityNodeInfo node : visited) {
-                    try {
-                        node.recycle();
-                    } catch (Exception e) {
-                        Log.w(TAG, "Error recycling node: " + e.getMessage());
-                    }
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error in updateImageViewVisibility: " + e.getMessage(), e);
+    /**
+     * Re-list the interactive windows: drop caches of closed windows, add new ones and rebuild
+     * every window's occluders. Windows that kept their bounds keep their views unwalked.
+     */
+    private void syncWindows() {
+        windowsChanged = false;
+        windowSyncCount++;
+        List<AccessibilityWindowInfo> windows = null;
+        try {
+            windows = getWindows();
+        } catch (Exception e) {
+            Log.w(TAG, "Error listing windows: " + e.getMessage());
+        }
+
+        int count = windows != null ? windows.size() : 0;
+        if (windowStackLayers.length < count) {
+            windowStackRects = new int[count * 4];
+            windowStackLayers = new int[count];
+        }
+        windowStackCount = 0;
+        SparseArray<WindowCache> current = new SparseArray<>(count);
+        boolean changed = false;
+        Rect bounds = new Rect();
+        for (int i = 0; i < count; i++) {
+            AccessibilityWindowInfo info = windows.get(i);
+            int type = info.getType();
+            if (type == AccessibilityWindowInfo.TYPE_ACCESSIBILITY_OVERLAY) {
+                // Our own overlay covers views on purpose
+                info.recycle();
+                continue;
+            }
+            info.getBoundsInScreen(bounds);
+            windowStackRects[windowStackCount * 4] = bounds.left;
+            windowStackRects[windowStackCount * 4 + 1] = bounds.top;
+            windowStackRects[windowStackCount * 4 + 2] = bounds.right;
+            windowStackRects[windowStackCount * 4 + 3] = bounds.bottom;
+            windowStackLayers[windowStackCount] = info.getLayer();
+            windowStackCount++;
+            if (!isScannableWindow(type, bounds)) {
+                info.recycle();
+                continue;
+            }
+
+            WindowCache window = windowCaches.get(info.getId());
+            if (window == null) {
+                window = new WindowCache(info.getId());
+                changed = true;
+            }
+            int oldLayer = window.layer;
+            if (window.update(info, bounds)) {
+                // Moved or resized: content reflows
+                window.dirty = true;
+                changed = true;
+            }
+            // Restacked only: no rescan, the occluders rebuilt below cover the new z-order
+            changed |= oldLayer != window.layer;
+            current.put(window.windowId, window);
+        }
+
+        if (current.size() == 0) {
+            // No window list (interactive windows not granted): fall back to the active window
+            AccessibilityNodeInfo root = getRootInActiveWindow();
+            if (root != null) {
+                WindowCache window = windowCaches.get(root.getWindowId());
+                if (window == null) {
+                    window = new WindowCache(root.getWindowId());
+                    changed = true;
+                }
+                bounds.set(0, 0, visibilityEngine.getScreenWidth(), visibilityEngine.getScreenHeight());
+                window.update(null, bounds);
+                current.put(window.windowId, window);
+                root.recycle();
+            }
+        }
+
+        for (int i = 0; i < windowCaches.size(); i++) {
+            WindowCache window = windowCaches.valueAt(i);
+            if (current.get(window.windowId) != window) {
+                window.release();
+                changed = true;
+            }
+        }
+        windowCaches = current;
+        if (changed) {
+            // Windows that are not walked again still see what now covers them
+            boolean needsClassification = false;
+            for (int i = 0; i < current.size(); i++) {
+                WindowCache window = current.valueAt(i);
+                rebuildOccluders(window);
+                needsClassification |= refreshVisibility(window.views, window.occluders);
+            }
+            publishViews(needsClassification);
+        }
+        Log.d(TAG, "Windows: " + current.size() + " scanned of " + count + " listed" +
+                (changed ? ", layout changed" : ""));
+    }
+
+    /**
+     * Application windows (split screen, picture-in-picture) and system windows such as floating
+     * chat heads. Status and navigation bars hold no images and already count as occluders.
+     */
+    private boolean isScannableWindow(int type, Rect bounds) {
+        if (type == AccessibilityWindowInfo.TYPE_APPLICATION) {
+            return true;
+        }
+        if (type != AccessibilityWindowInfo.TYPE_SYSTEM) {
+            return false;
+        }
+        int screenWidth = visibilityEngine.getScreenWidth();
+        int screenHeight = visibilityEngine.getScreenHeight();
+        boolean horizontalBar = bounds.width() >= screenWidth * 0.9 && bounds.height() < 200 &&
+                (bounds.top <= 0 || bounds.bottom >= screenHeight - 10);
+        boolean verticalBar = bounds.height() >= screenHeight * 0.9 && bounds.width() < 200 &&
+                (bounds.left <= 0 || bounds.right >= screenWidth - 10);
+        return !horizontalBar && !verticalBar;
+    }
+
+    /**
+     * Everything hiding part of a window: its fixed elements, the system bars, the windows
+     * stacked above it and the screen outside its bounds
+     */
+    private void rebuildOccluders(WindowCache window) {
+        int[] rects = new int[(window.fixedCount + 2 + windowStackCount + 4) * 4];
+        System.arraycopy(window.fixedRects, 0, rects, 0, window.fixedCount * 4);
+        int count = window.fixedCount;
+        Rect statusBar = getStatusBarBounds();
+        if (statusBar != null) {
+            count = addRect(rects, count, statusBar.left, statusBar.top, statusBar.right, statusBar.bottom);
+        }
+        Rect navBar = getNavigationBarBounds();
+        if (navBar != null) {
+            count = addRect(rects, count, navBar.left, navBar.top, navBar.right, navBar.bottom);
+        }
+        for (int i = 0; i < windowStackCount; i++) {
+            if (windowStackLayers[i] > window.layer) {
+                System.arraycopy(windowStackRects, i * 4, rects, count * 4, 4);
+                count++;
+            }
+        }
+        int screenWidth = visibilityEngine.getScreenWidth();
+        int screenHeight = visibilityEngine.getScreenHeight();
+        Rect b = window.bounds;
+        count = addRect(rects, count, 0, 0, screenWidth, b.top);
+        count = addRect(rects, count, 0, b.bottom, screenWidth, screenHeight);
+        count = addRect(rects, count, 0, b.top, b.left, b.bottom);
+        count = addRect(rects, count, b.right, b.top, screenWidth, b.bottom);
+        window.occluders = visibilityEngine.buildIndex(rects, count);
+    }
+
+    private static int addRect(int[] rects, int count, int left, int top, int right, int bottom) {
+        rects[count * 4] = left;
+        rects[count * 4 + 1] = top;
+        rects[count * 4 + 2] = right;
+        rects[count * 4 + 3] = bottom;
+        return count + 1;
+    }
+
+    private VisibilityEngine.Index occludersFor(int windowId) {
+        WindowCache window = windowCaches.get(windowId);
+        return window != null ? window.occluders : null;
+    }
+
+    /**
+     * Start walking the next queued window; each walk continues over as many frames as it needs
+     */
+    private void startNextWindowWalk() {
+        while (!walkQueue.isEmpty()) {
+            WindowCache window = walkQueue.remove(0);
+            if (windowCaches.get(window.windowId) != window) {
+                // Closed since it was queued
+                continue;
+            }
+            // Changes from here on mark it dirty again
+            window.dirty = false;
+            AccessibilityNodeInfo rootNode = null;
+            try {
+                rootNode = window.info != null ? window.info.getRoot() : getRootInActiveWindow();
+                if (rootNode == null) {
+                    Log.w(TAG, "Root node is null for window " + window.windowId);
+                    continue;
+                }
+                CharSequence packageName = rootNode.getPackageName();
+                window.packageName = packageName != null ? packageName.toString() : "";
+                walkWindow = window;
+                walkViews = new LongObjectMap<>(window.views.size());
+                walkSeen = new HashSet<>();
+                walkFixedElements = new ArrayList<>();
+                walkViewport.set(window.bounds);
+                fullWalker.start(rootNode, ViewIdentity.root(window.windowId, rootNode.getViewIdResourceName()), 0,
+                        walkViewport, WALK_MAX_NODES);
+            } catch (Exception e) {
+                Log.e(TAG, "Error in updateImageViewVisibility: " + e.getMessage(), e);
+                continue;
             } finally {
                 if (rootNode != null) {
                     try {
@@ -726,91 +1758,603 @@ public class ImageViewAccessibilityService extends AccessibilityService {
                         Log.w(TAG, "Error recycling root node: " + e.getMessage());
                     }
                 }
-                isUpdating = false;
             }
-        });
+            continueFullWalk();
+            return;
+        }
+        finishWindowScan();
     }
 
-    // ... [Keep all the existing helper methods: findAllViewsEnhanced, isTargetViewType, etc.] ...
-    private void findAllViewsEnhanced(AccessibilityNodeInfo node, Map<String, ImageViewInfo> imageViews,
-                                      Set<Rect> seen, Set<AccessibilityNodeInfo> visited, int depth, String path) {
-        if (node == null || visited.contains(node) || depth > 30) {
+    /**
+     * Run one budgeted slice of the current window walk; resumes on the next frame until done
+     */
+    private void continueFullWalk() {
+        if (!fullWalker.isActive()) {
             return;
         }
-        
-        visited.add(node);
-        
         try {
-            String className = node.getClassName() != null ? node.getClassName().toString() : "";
-            boolean isTargetView = isTargetViewType(className);
-            boolean isVisibile = node.isVisibleToUser();
-            if (isTargetView && isVisibile) {
-                Rect bounds = new Rect();
-                node.getBoundsInScreen(bounds);
-                
-                if (isValidView(bounds) && !seen.contains(bounds)) {
-                    int scrollX = 0, scrollY = 0;
-                    try {
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                            AccessibilityNodeInfo parent = node.getParent();
-                            while (parent != null && scrollX == 0 && scrollY == 0) {
-                                if (parent.isScrollable()) {
-                                    scrollX = currentScreenScrollX;
-                                    scrollY = currentScreenScrollY;
-                                    break;
-                                }
-                                AccessibilityNodeInfo nextParent = parent.getParent();
-                                parent.recycle();
-                                parent = nextParent;
-                            }
-                            if (parent != null) {
-                                parent.recycle();
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.w(TAG, "Error getting scroll info: " + e.getMessage());
-                        scrollX = currentScreenScrollX;
-                        scrollY = currentScreenScrollY;
+            if (!fullWalker.resume(fullWalkVisitor, WALK_SLICE_NANOS, WALK_SLICE_NODES)) {
+                Choreographer.getInstance().postFrameCallback(walkFrameCallback);
+                return;
+            }
+            publishWindowWalk();
+        } catch (Exception e) {
+            Log.e(TAG, "Error in updateImageViewVisibility: " + e.getMessage(), e);
+            fullWalker.cancel();
+            // Abandoned (e.g. a node went stale): walk this window again on a later scan
+            if (walkWindow != null) {
+                walkWindow.dirty = true;
+            }
+        }
+        clearWalkState();
+        startNextWindowWalk();
+    }
+
+    private void finishWindowScan() {
+        isUpdating = false;
+        Log.d(TAG, "Window scan done: " + windowCaches.size() + " windows cached, " + windowsWalkedCount +
+                " walked, " + windowsDeferredCount + " deferred, " + windowSyncCount + " window list syncs");
+        Log.d(TAG, eventCoalescer.getStatsSummary());
+        logPipelineStats();
+        // Windows over the per-scan bound, or changed during it, follow shortly
+        if ((windowsChanged || hasDirtyWindow()) && active) {
+            treeHandler.postDelayed(deferredScanRunnable, DEFERRED_SCAN_DELAY);
+        }
+    }
+
+    private boolean hasDirtyWindow() {
+        for (int i = 0; i < windowCaches.size(); i++) {
+            if (windowCaches.valueAt(i).dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The one refresh of a frame, covering every event since the previous one. Window changes
+     * go first: a dirty window is walked in full, which covers its queued subtrees, so only the
+     * subtrees of clean windows are re-scanned.
+     */
+    private void runCoalescedRefresh(int priority, int eventTypes) {
+        if (!active) {
+            return;
+        }
+        if (priority == EventCoalescer.PRIORITY_WINDOW && windowsChanged && !isUpdating) {
+            syncWindows();
+        }
+        boolean published = refreshPendingSubtrees();
+        if (!published || windowsChanged || hasDirtyWindow()) {
+            updateImageViewVisibility();
+        }
+    }
+
+    private void cancelFullWalk() {
+        walkQueue.clear();
+        if (fullWalker.isActive()) {
+            fullWalker.cancel();
+            try { Choreographer.getInstance().removeFrameCallback(walkFrameCallback); } catch (Throwable ignored) {}
+            if (walkWindow != null) {
+                walkWindow.dirty = true;
+            }
+            clearWalkState();
+            isUpdating = false;
+        }
+    }
+
+    private void clearWalkState() {
+        walkWindow = null;
+        walkViews = null;
+        walkSeen = null;
+        walkFixedElements = null;
+    }
+
+    /**
+     * Replace the walked window's views, fixed elements and occluders with the walk's results
+     */
+    private void publishWindowWalk() {
+        WindowCache window = walkWindow;
+        LongObjectMap<ImageViewInfo> imageViews = walkViews;
+        Log.d(TAG, "Found " + imageViews.size() + " Views (ImageViews/SurfaceViews/VideoViews) in window " +
+                window.windowId + " (" + window.packageName + ")");
+
+        // Fixed elements come from the same walk, so visibility below already uses them
+        List<Rect> fixedElements = walkFixedElements;
+        int[] rects = new int[fixedElements.size() * 4];
+        for (int i = 0; i < fixedElements.size(); i++) {
+            Rect fixed = fixedElements.get(i);
+            addRect(rects, i, fixed.left, fixed.top, fixed.right, fixed.bottom);
+        }
+        window.fixedRects = rects;
+        window.fixedCount = fixedElements.size();
+        rebuildOccluders(window);
+
+        // Verdicts merged while the walk was in progress landed on the views it replaces
+        for (int slot = 0, n = imageViews.capacity(); slot < n; slot++) {
+            ImageViewInfo info = imageViews.valueAt(slot);
+            if (info != null) {
+                ImageViewInfo existing = cachedImageViews.get(info.viewId);
+                // Same content only: a view resized by this walk keeps its fresh epoch
+                if (existing != null && existing.isClassified && !info.isClassified
+                        && existing.contentEpoch == info.contentEpoch) {
+                    inheritClassification(info, existing);
+                }
+            }
+        }
+        boolean needsClassification = refreshVisibility(imageViews, window.occluders);
+
+        window.views = imageViews;
+        window.lastWalkTime = System.currentTimeMillis();
+        // Identities may have shifted, scroll containers are resolved again
+        lastScrollContainerId = 0;
+        if (lastScrollSource != null) {
+            lastScrollSource.recycle();
+            lastScrollSource = null;
+        }
+        fullRefreshCount++;
+        windowsWalkedCount++;
+        Log.d(TAG, fullWalker.getStatsSummary() + " (full " + fullRefreshCount +
+                ", incremental " + incrementalRefreshCount + ", skipped " + skippedRefreshCount + ")");
+
+        publishViews(needsClassification);
+    }
+
+    /**
+     * Merge every window's views into the working set and publish it
+     */
+    private void publishViews(boolean needsClassification) {
+        int total = 0;
+        for (int i = 0; i < windowCaches.size(); i++) {
+            total += windowCaches.valueAt(i).views.size();
+        }
+        LongObjectMap<ImageViewInfo> merged = new LongObjectMap<>(total);
+        for (int i = 0; i < windowCaches.size(); i++) {
+            LongObjectMap<ImageViewInfo> views = windowCaches.valueAt(i).views;
+            for (int slot = 0, n = views.capacity(); slot < n; slot++) {
+                ImageViewInfo info = views.valueAt(slot);
+                if (info != null) {
+                    merged.put(info.viewId, info);
+                }
+            }
+        }
+        cachedImageViews = merged;
+        publishSnapshot();
+
+        if (needsClassification) {
+            triggerScreenCapture();
+        }
+    }
+
+    /**
+     * Freeze the working views into the next snapshot epoch and hand it to inference and the
+     * overlay. Views unchanged since their last freeze keep their previous state object.
+     */
+    private void publishSnapshot() {
+        LongObjectMap<ImageViewInfo> views = cachedImageViews;
+        long epoch = viewSnapshot.epoch + 1;
+        ViewState[] states = new ViewState[views.size()];
+        int count = 0;
+        for (int slot = 0, n = views.capacity(); slot < n; slot++) {
+            ImageViewInfo info = views.valueAt(slot);
+            if (info == null) {
+                continue;
+            }
+            if (info.contentEpoch == 0) {
+                // New or invalidated content; verdicts from frames matched before now cannot be for it
+                info.contentEpoch = epoch;
+            }
+            if (info.state == null || !info.state.matches(info)) {
+                info.state = new ViewState(info);
+            }
+            states[count++] = info.state;
+        }
+        ViewSnapshot snapshot = new ViewSnapshot(epoch, states, scrollPredictor.motion());
+        viewSnapshot = snapshot;
+        updateOverlay(snapshot);
+    }
+
+    /**
+     * Move the cached bounds of every view inside the scrolled container by the scroll delta,
+     * so overlays follow content without querying the tree. Bounds move once per scroll event,
+     * not per frame; the overlay's scroll prediction covers the frames in between.
+     */
+    private void translateForScroll(EventRecord event) {
+        long containerId = resolveScrollContainer(event);
+        if (containerId == 0) {
+            return;
+        }
+
+        int dx;
+        int dy;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            dx = event.scrollDeltaX;
+            dy = event.scrollDeltaY;
+            if (dx == -1 && dy == -1) {
+                // Deltas not reported by this view
+                return;
+            }
+        } else {
+            // Older releases only report absolute positions, and not for every view
+            int scrollX = event.scrollX;
+            int scrollY = event.scrollY;
+            boolean known = lastScrollX >= 0 && lastScrollY >= 0 && scrollX >= 0 && scrollY >= 0;
+            dx = known ? scrollX - lastScrollX : 0;
+            dy = known ? scrollY - lastScrollY : 0;
+            lastScrollX = scrollX;
+            lastScrollY = scrollY;
+        }
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        scrollPredictor.addSample(event.eventTimeNanos, dx, dy);
+
+        LongObjectMap<ImageViewInfo> views = cachedImageViews;
+        for (int slot = 0, n = views.capacity(); slot < n; slot++) {
+            ImageViewInfo info = views.valueAt(slot);
+            if (info != null && info.isInside(containerId)) {
+                // Content moves opposite to the scroll position. Swap in a moved copy rather than
+                // offsetting in place, so nobody holding the old Rect ever sees it change.
+                Rect moved = new Rect(info.bounds);
+                moved.offset(-dx, -dy);
+                info.bounds = moved;
+                info.scrollX += dx;
+                info.scrollY += dy;
+            }
+        }
+    }
+
+    /**
+     * Identity of the container a scroll event came from. Resolved through the tree once per
+     * container and remembered, so the rest of a fling costs no tree queries.
+     * @return the identity, 0 if unknown
+     */
+    private long resolveScrollContainer(EventRecord event) {
+        AccessibilityNodeInfo source = event.takeSource();
+        if (source == null) {
+            return 0;
+        }
+        if (source.equals(lastScrollSource)) {
+            source.recycle();
+            return lastScrollContainerId;
+        }
+
+        long containerId = 0;
+        if (windowCaches.get(source.getWindowId()) != null) {
+            int depth = resolveNodeIdentity(source);
+            if (depth >= 0) {
+                containerId = walkIdStack[depth];
+            }
+        }
+        if (lastScrollSource != null) {
+            lastScrollSource.recycle();
+        }
+        lastScrollSource = source;
+        lastScrollContainerId = containerId;
+        lastScrollX = -1;
+        lastScrollY = -1;
+        scrollPredictor.reset();
+        return containerId;
+    }
+
+    /**
+     * Recompute visibility of one window's refreshed view set against its occluders
+     * @return true if some visible view needs (re)classification
+     */
+    private boolean refreshVisibility(LongObjectMap<ImageViewInfo> imageViews, VisibilityEngine.Index occluders) {
+        boolean needsClassification = false;
+        for (int slot = 0, n = imageViews.capacity(); slot < n; slot++) {
+            ImageViewInfo info = imageViews.valueAt(slot);
+            if (info == null) {
+                continue;
+            }
+            info.visibilityPercentage = calculateVisibility(info.bounds, occluders);
+
+            if (info.visibilityPercentage > VISIBILITY_THRESHOLD) {
+                ImageViewInfo existing = cachedImageViews.get(info.viewId);
+                if (existing == null || !existing.isClassified) {
+                    needsClassification = true;
+                } else if (existing.isClassified) {
+                   // Previously classified, check if it needs re-classification
+                   if (System.currentTimeMillis() - existing.lastClassificationTime > VIEW_CACHE_DURATION) {
+                       // Only reprocess if visibility has increased by at least 10%
+                       if (info.visibilityPercentage > existing.highestVisibilityPercentage * 1.1) {
+                           needsClassification = true;
+                           invalidateVerdict(info); // Will be picked up by processScreenCapture
+                       }
+                   }
+                }
+            }
+        }
+        return needsClassification;
+    }
+
+    /**
+     * Queue a re-scan of just the subtree an event came from, instead of walking the whole window.
+     * The re-scan runs with the frame's coalesced refresh.
+     * @return false if a full refresh is needed instead (no source, empty cache, full walk due)
+     */
+    private boolean queueSubtreeRefresh(EventRecord event, int priority) {
+        WindowCache window = windowCaches.get(event.windowId);
+        if (!incrementalRefreshEnabled || window == null || window.dirty || window.lastWalkTime == 0 ||
+            System.currentTimeMillis() - window.lastWalkTime > FULL_REFRESH_INTERVAL) {
+            return false;
+        }
+
+        if (isNonStructuralChange(event.contentChangeTypes)) {
+            skippedRefreshCount++;
+            return true;
+        }
+
+        AccessibilityNodeInfo source = event.takeSource();
+        if (source == null) {
+            return false;
+        }
+        if (source.getWindowId() != window.windowId) {
+            source.recycle();
+            return false;
+        }
+        for (AccessibilityNodeInfo pending : pendingRefreshSources) {
+            if (pending.equals(source)) {
+                source.recycle();
+                return true;
+            }
+        }
+        if (pendingRefreshSources.size() >= MAX_PENDING_SUBTREES) {
+            // Too much is changing at once, a single full walk is cheaper
+            source.recycle();
+            return false;
+        }
+        pendingRefreshSources.add(source);
+        eventCoalescer.request(priority);
+        return true;
+    }
+
+    /**
+     * Re-scan every queued event subtree and merge the result into the cached view set.
+     * Marks the source windows for full walks if a subtree can no longer be located in the tree.
+     * @return true if the merged views were published
+     */
+    private boolean refreshPendingSubtrees() {
+        if (pendingRefreshSources.isEmpty()) {
+            return false;
+        }
+        List<AccessibilityNodeInfo> sources = new ArrayList<>(pendingRefreshSources);
+        pendingRefreshSources.clear();
+        int[] sourceWindows = new int[sources.size()];
+        for (int i = 0; i < sourceWindows.length; i++) {
+            sourceWindows[i] = sources.get(i).getWindowId();
+        }
+        if (isUpdating) {
+            // A scan is running; walk these windows in full once it is done
+            for (int windowId : sourceWindows) {
+                invalidateWindow(windowId, false);
+            }
+            recycleAll(sources);
+            return false;
+        }
+
+        // Copies of the touched windows' views, published together
+        SparseArray<LongObjectMap<ImageViewInfo>> updated = new SparseArray<>();
+        long[] removed = new long[16];
+        int visitedNodes = 0;
+        int ipcCalls = 0;
+        boolean fallBack = false;
+        try {
+            for (AccessibilityNodeInfo source : sources) {
+                WindowCache window = windowCaches.get(source.getWindowId());
+                if (window == null) {
+                    fallBack = true;
+                    break;
+                }
+                if (window.dirty) {
+                    // Its full walk this frame covers the subtree
+                    continue;
+                }
+                LongObjectMap<ImageViewInfo> imageViews = updated.get(window.windowId);
+                if (imageViews == null) {
+                    imageViews = new LongObjectMap<>(window.views);
+                    updated.put(window.windowId, imageViews);
+                }
+                int depth = resolveNodeIdentity(source);
+                if (depth < 0) {
+                    fallBack = true;
+                    break;
+                }
+
+                // Drop what we knew about this subtree, keep everything else
+                long sourceId = walkIdStack[depth];
+                Set<Rect> seen = new HashSet<>();
+                int removedCount = 0;
+                for (int slot = 0, n = imageViews.capacity(); slot < n; slot++) {
+                    ImageViewInfo info = imageViews.valueAt(slot);
+                    if (info == null) {
+                        continue;
                     }
-                    
-                    ImageViewInfo info = new ImageViewInfo(bounds, className, path);
-                    info.scrollX = scrollX;
-                    info.scrollY = scrollY;
-                    
-                    ImageViewInfo existing = cachedImageViews.get(path);
-                    if (existing != null) {
-                        info.isClassified = existing.isClassified;
-                        info.classificationResult = existing.classificationResult;
-                        info.classificationText = existing.classificationText;
-                        info.lastClassificationTime = existing.lastClassificationTime;
-                        info.highestVisibilityPercentage = Math.max(existing.highestVisibilityPercentage, info.visibilityPercentage);
+                    if (info.ancestry.length > depth && info.ancestry[depth] == sourceId) {
+                        if (removedCount == removed.length) {
+                            removed = Arrays.copyOf(removed, removedCount * 2 + 1);
+                        }
+                        removed[removedCount++] = info.viewId;
                     } else {
-                       info.highestVisibilityPercentage = info.visibilityPercentage;
+                        seen.add(info.bounds);
                     }
+                }
+                for (int i = 0; i < removedCount; i++) {
+                    imageViews.remove(removed[i]);
+                }
 
-                    imageViews.put(path, info);
-                    seen.add(new Rect(bounds));
-                    Log.d(TAG, "Added valid " + className + " with path " + path + " and bounds: " + bounds.toString() +
-                          " ScrollX: " + scrollX + " ScrollY: " + scrollY + " Depth: " + depth);
+                // Subtrees are small: walk each to completion, a too-large one means a full walk instead
+                subtreeViews = imageViews;
+                subtreeSeen = seen;
+                subtreeWindow = window;
+                walkViewport.set(window.bounds);
+                subtreeWalker.start(source, sourceId, depth, walkViewport, SUBTREE_MAX_NODES);
+                subtreeWalker.resume(subtreeVisitor, Long.MAX_VALUE, Integer.MAX_VALUE);
+                visitedNodes += subtreeWalker.getNodesVisited();
+                ipcCalls += subtreeWalker.getIpcCalls();
+                if (subtreeWalker.isTruncated()) {
+                    fallBack = true;
+                    break;
                 }
             }
-            
-            int childCount = node.getChildCount();
-            for (int i = 0; i < childCount; i++) {
-                AccessibilityNodeInfo child = null;
-                try {
-                    child = node.getChild(i);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in refreshPendingSubtrees: " + e.getMessage(), e);
+            subtreeWalker.cancel();
+            fallBack = true;
+        } finally {
+            subtreeViews = null;
+            subtreeSeen = null;
+            subtreeWindow = null;
+            recycleAll(sources);
+        }
+
+        if (fallBack) {
+            for (int windowId : sourceWindows) {
+                invalidateWindow(windowId, false);
+            }
+            return false;
+        }
+        if (updated.size() == 0) {
+            return false;
+        }
+
+        boolean needsClassification = false;
+        for (int i = 0; i < updated.size(); i++) {
+            WindowCache window = windowCaches.get(updated.keyAt(i));
+            LongObjectMap<ImageViewInfo> imageViews = updated.valueAt(i);
+            needsClassification |= refreshVisibility(imageViews, window.occluders);
+            window.views = imageViews;
+        }
+        incrementalRefreshCount++;
+        Log.d(TAG, "Incremental refresh of " + sources.size() + " subtrees in " + updated.size() +
+                " windows visited " + visitedNodes + " nodes with " + ipcCalls + " IPC");
+
+        publishViews(needsClassification);
+        return true;
+    }
+
+    /**
+     * Rebuild the identities a TreeWalker walk would give a node and its ancestors by walking
+     * up to the root. Costs one getParent and a sibling scan per level, far less than a full walk.
+     * On success walkIdStack[0..depth] holds the ids from the root down to the node.
+     * @return the node's depth, or -1 if it is detached or too deep
+     */
+    private int resolveNodeIdentity(AccessibilityNodeInfo node) {
+        int[] indices = new int[MAX_WALK_DEPTH + 1];
+        String[] names = new String[MAX_WALK_DEPTH + 2];
+        int levels = 0;
+        int windowId = node.getWindowId();
+        AccessibilityNodeInfo current = AccessibilityNodeInfo.obtain(node);
+        try {
+            while (current != null) {
+                names[levels] = current.getViewIdResourceName();
+                AccessibilityNodeInfo parent = current.getParent();
+                if (parent == null) {
+                    break;
+                }
+                int index = -1;
+                int childCount = parent.getChildCount();
+                for (int i = 0; i < childCount && index < 0; i++) {
+                    AccessibilityNodeInfo child = parent.getChild(i);
                     if (child != null) {
-                        findAllViewsEnhanced(child, imageViews, seen, visited, depth + 1, path + "-" + i);
+                        if (child.equals(current)) {
+                            index = i;
+                        }
+                        child.recycle();
                     }
-                } catch (Exception e) {
-                    Log.w(TAG, "Error accessing child " + i + " at depth " + depth + ": " + e.getMessage());
                 }
+                current.recycle();
+                current = parent;
+                if (index < 0 || levels >= MAX_WALK_DEPTH) {
+                    return -1;
+                }
+                indices[levels++] = index;
             }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing node at depth " + depth + ": " + e.getMessage(), e);
+        } finally {
+            if (current != null) {
+                current.recycle();
+            }
+        }
+
+        // indices / names were collected bottom-up, level "levels" being the root
+        walkIdStack[0] = ViewIdentity.root(windowId, names[levels]);
+        for (int depth = 1; depth <= levels; depth++) {
+            int level = levels - depth;
+            walkIdStack[depth] = ViewIdentity.child(walkIdStack[depth - 1], indices[level], names[level]);
+        }
+        return levels;
+    }
+
+    private static void recycleAll(Iterable<AccessibilityNodeInfo> nodes) {
+        for (AccessibilityNodeInfo node : nodes) {
+            try {
+                node.recycle();
+            } catch (Exception e) {
+                Log.w(TAG, "Error recycling node: " + e.getMessage());
+            }
+        }
+    }
+
+    // ... [Keep all the existing helper methods: findAllViewsEnhanced, isTargetViewType, etc.] ...
+    /**
+     * Add node to imageViews if it is a visible, reasonably sized target view
+     */
+    private void collectTargetView(AccessibilityNodeInfo node, int depth, long[] pathIds, Rect bounds,
+                                   LongObjectMap<ImageViewInfo> imageViews, Set<Rect> seen, WindowCache window) {
+        String className = node.getClassName() != null ? node.getClassName().toString() : "";
+        if (!isTargetViewType(className) || !node.isVisibleToUser()) {
+            return;
+        }
+        if (!isValidView(bounds) || seen.contains(bounds)) {
+            return;
         }
+
+        long viewId = pathIds[depth];
+        ImageViewInfo info = new ImageViewInfo(bounds, className, viewId, Arrays.copyOf(pathIds, depth + 1));
+        info.windowId = window.windowId;
+        info.packageHash = window.packageName.hashCode();
+        ImageViewInfo existing = cachedImageViews.get(viewId);
+        if (existing != null && existing.bounds.width() == bounds.width()
+                && existing.bounds.height() == bounds.height()) {
+            inheritClassification(info, existing);
+            info.contentEpoch = existing.contentEpoch;
+            info.state = existing.state;
+        } else if (existing != null) {
+            // Resized: likely new content, so its verdict goes and it gets a new content epoch on publish
+            info.highestVisibilityPercentage = info.visibilityPercentage;
+            Log.d(TAG, "View " + Long.toHexString(viewId) + " resized, verdict dropped");
+        } else {
+           info.highestVisibilityPercentage = info.visibilityPercentage;
+        }
+
+        imageViews.put(viewId, info);
+        seen.add(new Rect(bounds));
+        Log.d(TAG, "Added valid " + className + " with id " + Long.toHexString(viewId) + " and bounds: " + bounds.toString() +
+              " Depth: " + depth);
+    }
+
+    /**
+     * Drop a view's verdict for re-classification. Its content epoch restarts at the next publish,
+     * so results from frames matched against earlier snapshots are discarded on merge.
+     */
+    private void invalidateVerdict(ImageViewInfo info) {
+        info.isClassified = false;
+        info.contentEpoch = 0;
+    }
+
+    /**
+     * Carry the verdict of the previous info for the same view over to its replacement
+     */
+    private void inheritClassification(ImageViewInfo info, ImageViewInfo existing) {
+        info.isClassified = existing.isClassified;
+        info.classificationResult = existing.classificationResult;
+        info.classificationText = existing.classificationText;
+        info.verdict = existing.verdict;
+        info.faceCount = existing.faceCount;
+        info.maxFemaleScore = existing.maxFemaleScore;
+        info.contentHash = existing.contentHash;
+        info.lastClassificationTime = existing.lastClassificationTime;
+        info.highestVisibilityPercentage = Math.max(existing.highestVisibilityPercentage, info.visibilityPercentage);
     }
 
     private boolean isTargetViewType(String className) {
@@ -825,6 +2369,14 @@ public class ImageViewAccessibilityService extends AccessibilityService {
                className.contains("Player");
     }
 
+    /**
+     * Views showing video or other surface content that changes without layout changes
+     */
+    static boolean isVideoType(String className) {
+        return className != null && (className.contains("SurfaceView") ||
+                className.contains("VideoView") || className.contains("Player"));
+    }
+
     private boolean isValidView(Rect bounds) {
         if (bounds.isEmpty()) {
             return false;
@@ -849,130 +2401,57 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         return true;
     }
 
-    private void detectFixedElements() {
-        long now = System.currentTimeMillis();
-        if (now - lastFixedDetectTime < FIXED_DETECT_DEBOUNCE) {
-            return;
+    /**
+     * Toolbars, app bars, tab and navigation bars, or window-wide strips at its top or bottom
+     */
+    private boolean isFixedElement(AccessibilityNodeInfo node, Rect bounds, Rect window) {
+        if (bounds.isEmpty()) {
+            return false;
+        }
+        CharSequence name = node.getClassName();
+        String className = name != null ? name.toString() : "";
+        if (className.contains("Toolbar") ||
+            className.contains("AppBar") ||
+            className.contains("ActionBar") ||
+            className.contains("TabLayout") ||
+            className.contains("BottomNavigation") ||
+            className.contains("NavigationView") ||
+            className.contains("StatusBar")) {
+            return true;
         }
-        lastFixedDetectTime = now;
-
-        AccessibilityNodeInfo rootNode = null;
-        try {
-            rootNode = getRootInActiveWindow();
-            if (rootNode == null) return;
 
-            List<Rect> fixedElements = new ArrayList<>();
-            Set<AccessibilityNodeInfo> visited = new HashSet<>();
-            
-            findFixedElementsEnhanced(rootNode, fixedElements, visited, 0);
-            
-            Rect statusBar = getStatusBarBounds();
-            if (statusBar != null) {
-                fixedElements.add(statusBar);
-            }
-            
-            Rect navBar = getNavigationBarBounds();
-            if (navBar != null) {
-                fixedElements.add(navBar);
-            }
-            
-            cachedFixedElements.put(currentPackageName, fixedElements);
-            
-            for (AccessibilityNodeInfo node : visited) {
-                try {
-                    node.recycle();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error recycling fixed element node: " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error in detectFixedElements: " + e.getMessage(), e);
-        } finally {
-            if (rootNode != null) {
-                try {
-                    rootNode.recycle();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error recycling root node in detectFixedElements: " + e.getMessage());
-                }
-            }
+        if (bounds.width() < window.width() * 0.9 || bounds.height() >= 200) {
+            return false;
         }
+        return bounds.top <= window.top || bounds.bottom >= window.bottom - 10;
     }
 
-    private void findFixedElementsEnhanced(AccessibilityNodeInfo node, List<Rect> fixedElements, Set<AccessibilityNodeInfo> visited, int depth) {
-        if (node == null || visited.contains(node) || depth > 30) return;
-        
-        visited.add(node);
-        
-        try {
-            String className = node.getClassName() != null ? node.getClassName().toString() : "";
-            
-            boolean isFixed = className.contains("Toolbar") ||
-                              className.contains("AppBar") ||
-                              className.contains("ActionBar") ||
-                              className.contains("TabLayout") ||
-                              className.contains("BottomNavigation") ||
-                              className.contains("NavigationView") ||
-                              className.contains("StatusBar");
-            
-            if (!isFixed) {
-                Rect bounds = new Rect();
-                node.getBoundsInScreen(bounds);
-                DisplayMetrics metrics = getResources().getDisplayMetrics();
-                
-                if (bounds.top <= 0 && bounds.width() >= metrics.widthPixels * 0.9 && bounds.height() < 200) {
-                    isFixed = true;
-                }
-                
-                if (bounds.bottom >= metrics.heightPixels - 10 && bounds.width() >= metrics.widthPixels * 0.9 && bounds.height() < 200) {
-                    isFixed = true;
-                }
-            }
-            
-            if (isFixed) {
-                Rect bounds = new Rect();
-                node.getBoundsInScreen(bounds);
-                if (!bounds.isEmpty()) {
-                    fixedElements.add(bounds);
-                }
-            }
-
-            for (int i = 0; i < node.getChildCount(); i++) {
-                AccessibilityNodeInfo child = node.getChild(i);
-                if (child != null) {
-                    findFixedElementsEnhanced(child, fixedElements, visited, depth + 1);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error in findFixedElementsEnhanced: " + e.getMessage(), e);
-        }
+    private int calculateVisibility(Rect imageBounds, VisibilityEngine.Index fixedElements) {
+        return visibilityEngine.visiblePercent(fixedElements,
+                imageBounds.left, imageBounds.top, imageBounds.right, imageBounds.bottom);
     }
 
-    private int calculateVisibility(Rect imageBounds, List<Rect> fixedElements) {
+    /**
+     * Screen size only changes with the configuration; fixed elements are re-detected for it
+     */
+    private void updateScreenMetrics() {
         DisplayMetrics metrics = getResources().getDisplayMetrics();
-        Rect screenBounds = new Rect(0, 0, metrics.widthPixels, metrics.heightPixels);
-
-        Rect visibleRect = new Rect(imageBounds);
-        if (!visibleRect.intersect(screenBounds)) {
-            return 0;
-        }
-
-        int totalArea = imageBounds.width() * imageBounds.height();
-        int visibleArea = visibleRect.width() * visibleRect.height();
-
-        Rect unionOverlap = new Rect();
-        for (Rect fixed : fixedElements) {
-            if (Rect.intersects(visibleRect, fixed)) {
-                Rect overlap = new Rect();
-                overlap.setIntersect(visibleRect, fixed);
-                unionOverlap.union(overlap);
+        if (metrics.widthPixels != visibilityEngine.getScreenWidth() ||
+            metrics.heightPixels != visibilityEngine.getScreenHeight()) {
+            visibilityEngine.setScreen(metrics.widthPixels, metrics.heightPixels);
+            // Every window is laid out again
+            windowsChanged = true;
+            for (int i = 0; i < windowCaches.size(); i++) {
+                windowCaches.valueAt(i).dirty = true;
             }
         }
-        if (!unionOverlap.isEmpty()) {
-            int overlapArea = unionOverlap.width() * unionOverlap.height();
-            visibleArea = Math.max(0, visibleArea - overlapArea);
-        }
+    }
 
-        return totalArea > 0 ? Math.max(0, Math.min(100, (visibleArea * 100) / totalArea)) : 0;
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        treeHandler.post(this::updateScreenMetrics);
+        handler.post(this::resizeScreenCapture);
     }
 
     private Rect getStatusBarBounds() {
@@ -1009,18 +2488,32 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         return 0;
     }
 
-    private void updateOverlay(List<ImageViewInfo> imageViews) {
+    /**
+     * Hand the latest snapshot to the render stage; snapshots superseded before the commit runs
+     * are never drawn
+     */
+    private void updateOverlay(ViewSnapshot snapshot) {
+        if (pendingOverlay.getAndSet(snapshot) == null) {
+            renderStage.submit(this::commitOverlay);
+        }
+    }
+
+    private void commitOverlay() {
+        ViewSnapshot snapshot = pendingOverlay.getAndSet(null);
+        if (snapshot == null || !active) {
+            return;
+        }
         if (overlayView == null) {
             createOverlay();
         }
         
         if (overlayView != null) {
-            overlayView.updateImageViews(imageViews);
+            overlayView.updateImageViews(snapshot);
         }
     }
     private void clearOverlay() {
         if (overlayView != null) {
-            overlayView.updateImageViews(new ArrayList<>());
+            overlayView.updateImageViews(ViewSnapshot.EMPTY);
         }
     }
     
@@ -1054,10 +2547,12 @@ public class ImageViewAccessibilityService extends AccessibilityService {
     @Override
     public void onInterrupt() {
         Log.d(TAG, "Service interrupted");
-        if (isScrollMonitoring) {
-            isScrollMonitoring = false;
-            Choreographer.getInstance().removeFrameCallback(frameCallback);
-        }
+        treeHandler.post(() -> {
+            if (isScrollMonitoring) {
+                isScrollMonitoring = false;
+                Choreographer.getInstance().removeFrameCallback(frameCallback);
+            }
+        });
     }
 
     @Override
@@ -1066,11 +2561,8 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         Log.d(TAG, "Service destroyed");
   active = false;
         
-        if (isScrollMonitoring) {
-            isScrollMonitoring = false;
-            Choreographer.getInstance().removeFrameCallback(frameCallback);
-        }
         
+        captureScheduler.detach();
         if (virtualDisplay != null) {
             virtualDisplay.release();
         }
@@ -1091,8 +2583,16 @@ public class ImageViewAccessibilityService extends AccessibilityService {
             }
         }
         
-        if (backgroundHandler != null) {
-            backgroundHandler.getLooper().quitSafely();
+        // Stops the scroll monitor and walks with the tree stage's looper
+        ingestStage.quit();
+        treeStage.quit();
+        frameStage.quit();
+        inferenceStage.quit();
+        renderStage.quit();
+
+        if (verdictStore != null) {
+            verdictStore.close();
+            verdictStore = null;
         }
   stopForeground(true);
   clearOverlay();
@@ -1100,6 +2600,44 @@ public class ImageViewAccessibilityService extends AccessibilityService {
 
     // Native method for image classification
     public native String ImageClassification(Bitmap bitmapIn, AssetManager assetManager);
+
+    // Batched native classification of regions read in place from an ImageReader plane.
+    // rects holds [left, top, right, bottom] per region; results receives one ClassificationResults record each.
+    // trackIds (nullable) gives regions a stable id so their faces are tracked instead of re-detected; 0 = untracked.
+    // Returns false if the records were not written.
+    public native boolean ClassifyRegions(ByteBuffer frame, int width, int height, int rowStride, int pixelStride,
+                                          int[] rects, int count, long[] trackIds, ByteBuffer results,
+                                          AssetManager assetManager);
+
+    // Whole-frame mode of ClassifyRegions: one face detection over the area covering all rects, faces
+    // assigned to regions by overlap. Tracks of trackIds (nullable) are dropped. Returns the number of
+    // detector passes, 0 on failure.
+    public native int ClassifyFrame(ByteBuffer frame, int width, int height, int rowStride, int pixelStride,
+                                    int[] rects, int count, long[] trackIds, ByteBuffer results,
+                                    AssetManager assetManager);
+
+    // ClassifyRegions with each region first shrunk by scaleDivisor, for the scale benchmark
+    public native boolean ClassifyRegionsDownscaled(ByteBuffer frame, int width, int height, int rowStride, int pixelStride,
+                                                    int[] rects, int count, ByteBuffer results, AssetManager assetManager,
+                                                    int scaleDivisor);
+
+    // Size and CPU affinity of the native inference worker pool
+    public native void ConfigureInference(int threads, int cpuPolicy);
+
+    // Gender stage options: early exit on the first female face, faces classified per region (0 = all)
+    public native void ConfigureGender(boolean earlyExit, int maxFaces);
+
+    // Load the models and run dummy passes on every worker; returns time to ready in ms, -1 on failure
+    public native long WarmUpModels(AssetManager assetManager);
+
+    // Exact hashes of every tileSize square of the frame, row-major, for change detection
+    // Returns false if nothing was written
+    public native boolean ComputeTileHashes(ByteBuffer frame, int width, int height, int rowStride, int pixelStride,
+                                            int tileSize, long[] hashesOut);
+
+    // Batched native perceptual hashes of frame regions, 0 where a region cannot be hashed
+    public native void ComputeRegionHashes(ByteBuffer frame, int width, int height, int rowStride, int pixelStride,
+                                           int[] rects, int count, long[] hashesOut);
     
     static {
         try {
@@ -1110,29 +2648,152 @@ public class ImageViewAccessibilityService extends AccessibilityService {
         }
     }
 
+    /**
+     * What the tree stage needs from an accessibility event, read on the ingest stage
+     */
+    static final class EventRecord {
+        int type;
+        int windowId;
+        int contentChangeTypes;
+        int windowChanges;
+        int scrollDeltaX = -1;    // -1 when not reported
+        int scrollDeltaY = -1;
+        int scrollX;
+        int scrollY;
+        long eventTimeNanos;      // uptime of scroll events
+        AccessibilityNodeInfo source;
+
+        /**
+         * @return the source, now owned by the caller, or null
+         */
+        AccessibilityNodeInfo takeSource() {
+            AccessibilityNodeInfo taken = source;
+            source = null;
+            return taken;
+        }
+
+        void recycle() {
+            if (source != null) {
+                source.recycle();
+                source = null;
+            }
+        }
+    }
+
+    /**
+     * Verdict for one view of a classified frame, merged on the tree stage
+     */
+    static final class InferenceResult {
+        final long viewId;
+        final long contentHash;
+        final int verdict;
+        final int faceCount;
+        final float maxFemaleScore;
+        final boolean inferred;     // false for verdict cache / store hits
+
+        InferenceResult(long viewId, long contentHash, int verdict) {
+            this.viewId = viewId;
+            this.contentHash = contentHash;
+            this.verdict = verdict;
+            this.faceCount = 0;
+            this.maxFemaleScore = 0;
+            this.inferred = false;
+        }
+
+        InferenceResult(long viewId, long contentHash, int verdict, int faceCount, float maxFemaleScore) {
+            this(viewId, contentHash, verdict, faceCount, maxFemaleScore, true);
+        }
+
+        private InferenceResult(long viewId, long contentHash, int verdict, int faceCount, float maxFemaleScore,
+                                boolean inferred) {
+            this.viewId = viewId;
+            this.contentHash = contentHash;
+            this.verdict = verdict;
+            this.faceCount = faceCount;
+            this.maxFemaleScore = maxFemaleScore;
+            this.inferred = inferred;
+        }
+
+        /**
+         * The same verdict applied again without inference
+         */
+        InferenceResult reuse() {
+            return inferred ? new InferenceResult(viewId, contentHash, verdict, faceCount, maxFemaleScore, false) : this;
+        }
+    }
+
+    /**
+     * Capture rect and tile signature a view was last judged on; inference thread only
+     */
+    static final class RegionWatch {
+        int left;
+        int top;
+        int right;
+        int bottom;
+        long signature;
+        long checkTime;             // ms
+        long frame;                 // last processed frame it was visible in
+        InferenceResult result;     // last verdict for these pixels, null if none
+
+        boolean isAt(int[] rect) {
+            return left == rect[0] && top == rect[1] && right == rect[2] && bottom == rect[3];
+        }
+    }
+
+    /**
+     * Working state of one target view, owned by the tree stage; other stages see ViewState copies
+     */
     static class ImageViewInfo {
         Rect bounds;
         int visibilityPercentage;
         String nodeType;
-        int scrollX;
+        int scrollX;        // scroll applied to bounds since the view was last read from the tree
         int scrollY;
         boolean classificationResult;
         boolean isClassified;
+        int verdict;
+        int faceCount;
+        float maxFemaleScore;
         String classificationText;
-        String childPath;
+        long viewId;        // ViewIdentity of the node
+        int windowId;
+        int packageHash;    // package of the window, verdict store key
+        long[] ancestry;    // identities from the window root down to this node
+        long contentHash;
         long lastClassificationTime;
         int highestVisibilityPercentage;
+        boolean video;      // content changes without layout changes, sampled periodically
+        long contentEpoch;  // snapshot epoch its current content first appeared in, 0 until published
+        ViewState state;    // last frozen copy, reused while nothing changed
+
+        /**
+         * @return true if the node identified by ancestorId is this view or one of its ancestors
+         */
+        boolean isInside(long ancestorId) {
+            for (long id : ancestry) {
+                if (id == ancestorId) {
+                    return true;
+                }
+            }
+            return false;
+        }
 
-        ImageViewInfo(Rect bounds, String nodeType, String childPath) {
+        ImageViewInfo(Rect bounds, String nodeType, long viewId, long[] ancestry) {
             this.bounds = new Rect(bounds);
             this.visibilityPercentage = 0;
             this.nodeType = nodeType;
+            this.video = isVideoType(nodeType);
             this.scrollX = 0;
             this.scrollY = 0;
             this.classificationResult = false;
             this.isClassified = false;
+            this.verdict = ClassificationResults.VERDICT_ERROR;
+            this.faceCount = 0;
+            this.maxFemaleScore = 0;
             this.classificationText = "";
-            this.childPath = childPath;
+            this.viewId = viewId;
+            this.ancestry = ancestry;
+            this.contentHash = 0;
             this.lastClassificationTime = 0;
             this.highestVisibilityPercentage = 0;
         }
@@ -1147,8 +2808,12 @@ public class ImageViewAccessibilityService extends AccessibilityService {
                     ", scrollY=" + scrollY +
                     ", classificationResult=" + classificationResult +
                     ", isClassified=" + isClassified +
+                    ", verdict=" + verdict +
+                    ", faceCount=" + faceCount +
+                    ", maxFemaleScore=" + maxFemaleScore +
                     ", classificationText='" + classificationText + '\'' +
-                    ", childPath='" + childPath + '\'' +
+                    ", viewId=" + Long.toHexString(viewId) +
+                    ", contentHash=" + Long.toHexString(contentHash) +
                     ", lastClassificationTime=" + lastClassificationTime +
                     ", highestVisibilityPercentage=" + highestVisibilityPercentage +
                     '}';
@@ -7,11 +7,10 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
+import android.view.Choreographer;
 import android.view.View;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import android.os.Build;
+import java.util.Arrays;
+import android.os.SystemClock;
 import android.util.Log;
 import android.os.Handler;
 import android.os.Looper;
@@ -23,8 +22,6 @@ public class OverlayView extends View {
     private Paint textPaint;
     private Paint typePaint;
     private Paint blockedPaint;
-    // Use thread-safe list for concurrent access
-    private volatile List<ImageViewAccessibilityService.ImageViewInfo> imageViews = new CopyOnWriteArrayList<>();
     private volatile boolean isDrawing = false;
     private Handler mainHandler;
     
@@ -32,6 +29,43 @@ public class OverlayView extends View {
     private static final long MIN_REDRAW_INTERVAL = 16; // ~60 FPS max for overlay
     private long lastDrawTime = 0;
     private boolean pendingUpdate = false;
+    // Latest snapshot not yet diffed; one reusable runnable applies it after the throttle
+    private ViewSnapshot pendingSnapshot;
+    private final Runnable throttledUpdate = () -> {
+        pendingUpdate = false;
+        performUpdate();
+    };
+
+    // Blocked rects (l, t, r, b) being drawn, and a spare buffer the next set is collected into.
+    // Both are kept sorted so the same set compares equal whatever order the snapshot lists it in.
+    // Scrolling rects are drawn at their predicted position while the motion is active.
+    private int[] drawnRects = new int[16 * 4];
+    private boolean[] drawnScrolling = new boolean[16];
+    private int drawnCount = 0;
+    private int[] nextRects = new int[16 * 4];
+    private boolean[] nextScrolling = new boolean[16];
+
+    // Scroll prediction, driven by Choreographer while the latest snapshot's motion is active
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L;
+    private static final long MIN_FRAME_INTERVAL_NANOS = 4_000_000L;
+    private static final long MAX_FRAME_INTERVAL_NANOS = 50_000_000L;
+    private ScrollPredictor.Motion motion;
+    private boolean predictionScheduled = false;
+    private long lastFrameNanos = 0;
+    private long frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private long predictionTargetNanos = 0;
+    private final Choreographer.FrameCallback predictionFrame = this::onPredictionFrame;
+    private final Rect drawBounds = new Rect();
+    private float blockedTextWidth;
+
+    // Statistics
+    private long updateCount = 0;
+    private long unchangedCount = 0;
+    private long invalidateCount = 0;
+    private long drawCount = 0;
+    private long drawNanos = 0;
+    private long maxDrawNanos = 0;
+    private long predictedFrames = 0;
     
     // Pre-calculated text strings to avoid allocations during draw
     private static final String TEXT_TRUE = "TRUE";
@@ -58,6 +92,7 @@ public class OverlayView extends View {
         textPaint.setShadowLayer(1, 0, 1, Color.BLACK);
         textPaint.setDither(false);
         textPaint.setSubpixelText(false); // Disable for better performance
+        blockedTextWidth = textPaint.measureText(TEXT_BLOCKED);
 
         typePaint = new Paint(textPaint);
         typePaint.setTextSize(14);
@@ -68,10 +103,7 @@ public class OverlayView extends View {
         blockedPaint.setColor(Color.BLACK);
         blockedPaint.setAlpha(242); // 95% opacity
         
-        // Use hardware acceleration for better performance
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-            setLayerType(View.LAYER_TYPE_HARDWARE, null);
-        }
+        // No hardware layer: it re-rendered the whole full-screen texture on every invalidate
         
         // Disable unnecessary view operations
         setWillNotDraw(false);
@@ -79,26 +111,124 @@ public class OverlayView extends View {
         setFocusable(false);
     }
 
-    public void updateImageViews(List<ImageViewAccessibilityService.ImageViewInfo> newImageViews) {
-        // Throttle updates to maintain performance
+    /**
+     * Take the latest snapshot. Throttled to one diff per MIN_REDRAW_INTERVAL; snapshots
+     * superseded within the interval are never looked at. Main thread only.
+     */
+    public void updateImageViews(ViewSnapshot snapshot) {
+        pendingSnapshot = snapshot;
         long currentTime = System.currentTimeMillis();
         if (currentTime - lastDrawTime < MIN_REDRAW_INTERVAL) {
-            pendingUpdate = true;
-            mainHandler.postDelayed(() -> {
-                if (pendingUpdate) {
-                    pendingUpdate = false;
-                    performUpdate(newImageViews);
-                }
-            }, MIN_REDRAW_INTERVAL);
+            if (!pendingUpdate) {
+                pendingUpdate = true;
+                mainHandler.postDelayed(throttledUpdate, MIN_REDRAW_INTERVAL);
+            }
         } else {
-            performUpdate(newImageViews);
+            performUpdate();
         }
     }
     
-    private void performUpdate(List<ImageViewAccessibilityService.ImageViewInfo> newImageViews) {
-        // Direct assignment for thread-safe list
-        this.imageViews = new CopyOnWriteArrayList<>(newImageViews);
-        
+    private void performUpdate() {
+        ViewSnapshot snapshot = pendingSnapshot;
+        pendingSnapshot = null;
+        if (snapshot == null) {
+            return;
+        }
+        updateCount++;
+
+        // Collect the blocked rects of the new snapshot into the spare buffer
+        int count = 0;
+        for (int i = 0, n = snapshot.size(); i < n; i++) {
+            ViewState info = snapshot.get(i);
+            if (!info.isClassified || info.classificationResult || info.bounds.isEmpty()) {
+                continue;
+            }
+            if (count == nextScrolling.length) {
+                nextRects = Arrays.copyOf(nextRects, count * 8);
+                nextScrolling = Arrays.copyOf(nextScrolling, count * 2);
+            }
+            Rect bounds = info.bounds;
+            nextRects[count * 4] = bounds.left;
+            nextRects[count * 4 + 1] = bounds.top;
+            nextRects[count * 4 + 2] = bounds.right;
+            nextRects[count * 4 + 3] = bounds.bottom;
+            nextScrolling[count] = info.scrolling;
+            count++;
+        }
+
+        sortRects(nextRects, nextScrolling, count);
+        boolean changed = !sameRects(drawnRects, drawnScrolling, drawnCount, nextRects, nextScrolling, count);
+        int[] spareRects = drawnRects;
+        drawnRects = nextRects;
+        nextRects = spareRects;
+        boolean[] spareScrolling = drawnScrolling;
+        drawnScrolling = nextScrolling;
+        nextScrolling = spareScrolling;
+        drawnCount = count;
+
+        motion = snapshot.motion;
+        if (motion != null && !predictionScheduled) {
+            predictionScheduled = true;
+            Choreographer.getInstance().postFrameCallback(predictionFrame);
+        }
+
+        if (!changed) {
+            // Visibility or unblocked views changed, nothing drawn did
+            unchangedCount++;
+            return;
+        }
+        requestRedraw();
+    }
+
+    /**
+     * Sort packed rects by left, top, right, bottom, then scrolling flag. Insertion sort: blocked
+     * sets are small and usually arrive nearly in order.
+     */
+    private static void sortRects(int[] rects, boolean[] scrolling, int count) {
+        for (int i = 1; i < count; i++) {
+            int l = rects[i * 4], t = rects[i * 4 + 1], r = rects[i * 4 + 2], b = rects[i * 4 + 3];
+            boolean s = scrolling[i];
+            int j = i - 1;
+            while (j >= 0 && compareRect(rects, scrolling, j, l, t, r, b, s) > 0) {
+                System.arraycopy(rects, j * 4, rects, (j + 1) * 4, 4);
+                scrolling[j + 1] = scrolling[j];
+                j--;
+            }
+            rects[(j + 1) * 4] = l;
+            rects[(j + 1) * 4 + 1] = t;
+            rects[(j + 1) * 4 + 2] = r;
+            rects[(j + 1) * 4 + 3] = b;
+            scrolling[j + 1] = s;
+        }
+    }
+
+    private static int compareRect(int[] rects, boolean[] scrolling, int i, int l, int t, int r, int b, boolean s) {
+        if (rects[i * 4] != l) return Integer.compare(rects[i * 4], l);
+        if (rects[i * 4 + 1] != t) return Integer.compare(rects[i * 4 + 1], t);
+        if (rects[i * 4 + 2] != r) return Integer.compare(rects[i * 4 + 2], r);
+        if (rects[i * 4 + 3] != b) return Integer.compare(rects[i * 4 + 3], b);
+        return Boolean.compare(scrolling[i], s);
+    }
+
+    /**
+     * True if a and b hold the same rects with the same scrolling flags; both must be sorted
+     */
+    private static boolean sameRects(int[] a, boolean[] aScrolling, int aCount,
+                                     int[] b, boolean[] bScrolling, int bCount) {
+        if (aCount != bCount) {
+            return false;
+        }
+        for (int i = 0; i < aCount; i++) {
+            if (a[i * 4] != b[i * 4] || a[i * 4 + 1] != b[i * 4 + 1] || a[i * 4 + 2] != b[i * 4 + 2]
+                    || a[i * 4 + 3] != b[i * 4 + 3] || aScrolling[i] != bScrolling[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void requestRedraw() {
+        invalidateCount++;
         // Only invalidate if we're on the UI thread
         if (Looper.myLooper() == Looper.getMainLooper()) {
             invalidate();
@@ -107,6 +237,52 @@ public class OverlayView extends View {
         }
     }
 
+    /**
+     * Move the scrolling rects to where content is on this frame. The app draws its content for
+     * the same frame time, so both land on screen at the same vsync.
+     */
+    private void onPredictionFrame(long frameTimeNanos) {
+        predictionScheduled = false;
+        long interval = frameTimeNanos - lastFrameNanos;
+        if (lastFrameNanos > 0 && interval >= MIN_FRAME_INTERVAL_NANOS && interval <= MAX_FRAME_INTERVAL_NANOS) {
+            frameIntervalNanos = interval;
+        }
+        lastFrameNanos = frameTimeNanos;
+        predictionTargetNanos = frameTimeNanos;
+
+        ScrollPredictor.Motion current = motion;
+        boolean moving = current != null && current.isActive(frameTimeNanos);
+        if (moving) {
+            predictionScheduled = true;
+            Choreographer.getInstance().postFrameCallback(predictionFrame);
+        } else {
+            // Settle back on the last reported bounds
+            motion = null;
+            lastFrameNanos = 0;
+        }
+
+        for (int i = 0; i < drawnCount; i++) {
+            if (drawnScrolling[i]) {
+                requestRedraw();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Bounds of drawn rect i at targetNanos: offset by the predicted travel and grown by the
+     * margin when it scrolls with an active motion, as reported otherwise
+     */
+    private void predictRect(int i, ScrollPredictor.Motion current, long targetNanos, Rect out) {
+        int[] rects = drawnRects;
+        out.set(rects[i * 4], rects[i * 4 + 1], rects[i * 4 + 2], rects[i * 4 + 3]);
+        if (current == null || !drawnScrolling[i]) {
+            return;
+        }
+        out.offset(current.offsetX(targetNanos), current.offsetY(targetNanos));
+        out.inset(-current.marginX(targetNanos), -current.marginY(targetNanos));
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         if (isDrawing) {
@@ -115,6 +291,7 @@ public class OverlayView extends View {
         
         isDrawing = true;
         lastDrawTime = System.currentTimeMillis();
+        long start = SystemClock.elapsedRealtimeNanos();
         
         try {
             super.onDraw(canvas);
@@ -122,28 +299,31 @@ public class OverlayView extends View {
             // Clear canvas more efficiently
             canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
             
-            // Direct iteration without copying (thread-safe list)
-            for (ImageViewAccessibilityService.ImageViewInfo info : imageViews) {
-                if (info != null && info.bounds != null && info.isClassified && !info.classificationResult) {
-                    drawImageViewOverlay(canvas, info);
-                }
+            ScrollPredictor.Motion current = motion;
+            long target = predictionTargetNanos;
+            if (current != null && !current.isActive(target)) {
+                current = null;
+            }
+            if (current != null) {
+                predictedFrames++;
+            }
+            for (int i = 0; i < drawnCount; i++) {
+                predictRect(i, current, target, drawBounds);
+                drawBlockedRect(canvas, drawBounds);
             }
             
         } catch (Exception e) {
             if (DEBUG_LOGGING) Log.e(TAG, "Error in onDraw: " + e.getMessage());
         } finally {
             isDrawing = false;
+            long nanos = SystemClock.elapsedRealtimeNanos() - start;
+            drawCount++;
+            drawNanos += nanos;
+            maxDrawNanos = Math.max(maxDrawNanos, nanos);
         }
     }
     
-    private void drawImageViewOverlay(Canvas canvas, ImageViewAccessibilityService.ImageViewInfo info) {
-        Rect bounds = info.bounds;
-        
-        // Skip if bounds are invalid
-        if (bounds.isEmpty()) {
-            return;
-        }
-        
+    private void drawBlockedRect(Canvas canvas, Rect bounds) {
         // Draw solid black box with 95% opacity
         canvas.drawRect(bounds, blockedPaint);
 
@@ -153,7 +333,7 @@ public class OverlayView extends View {
         }
 
         // Calculate text position
-        float textWidth = textPaint.measureText(TEXT_BLOCKED);
+        float textWidth = blockedTextWidth;
         float textX = bounds.centerX() - (textWidth / 2);
         float textY = bounds.centerY() + (textPaint.getTextSize() / 3);
 
@@ -163,8 +343,20 @@ public class OverlayView extends View {
 
         canvas.drawText(TEXT_BLOCKED, textX, textY, textPaint);
     }
+
+    /**
+     * Get statistics on updates, invalidations and draw time
+     */
+    public String getStatsSummary() {
+        return String.format(
+            "Overlay: %d updates, %d unchanged, %d invalidations, %d draws avg %.3fms max %.3fms, %d predicted (frame %.1fms)",
+            updateCount, unchangedCount, invalidateCount,
+            drawCount, drawCount > 0 ? drawNanos / (drawCount * 1_000_000f) : 0f, maxDrawNanos / 1_000_000f,
+            predictedFrames, frameIntervalNanos / 1_000_000f
+        );
+    }
     
-    private int getOverlayColor(ImageViewAccessibilityService.ImageViewInfo info) {
+    private int getOverlayColor(ViewState info) {
         // This method is no longer used for drawing the blocked overlay,
         // but we can keep it for potential future use or other overlay types.
         if (info.isClassified && !info.classificationResult) {
@@ -193,6 +385,12 @@ public class OverlayView extends View {
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        mainHandler.removeCallbacks(throttledUpdate);
+        pendingUpdate = false;
+        if (predictionScheduled) {
+            Choreographer.getInstance().removeFrameCallback(predictionFrame);
+            predictionScheduled = false;
+        }
     }
 
     @Override
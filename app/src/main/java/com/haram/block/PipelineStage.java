@@ -0,0 +1,171 @@
+package com.haram.block;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of the event → tree → frame → inference → render pipeline: a looper thread (or the
+ * main looper) fed through a bounded hand-off queue. submit() refuses work beyond the capacity
+ * instead of letting a slow stage pile up tasks; the caller decides what a refusal means.
+ * A running task still counts against the capacity until it returns.
+ * Tracks queue depth, wait time (submit to start) and run time of submitted tasks.
+ */
+public class PipelineStage {
+    private final String name;
+    private final HandlerThread thread;   // null on the main looper
+    private final Handler handler;
+    private final int capacity;
+
+    // Tasks queued or running; clear() bumps the generation so stale tasks are skipped
+    private final AtomicInteger depth = new AtomicInteger(0);
+    private volatile int generation = 0;
+
+    private final AtomicInteger maxDepth = new AtomicInteger(0);
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong waitNanos = new AtomicLong(0);
+    private final AtomicLong maxWaitNanos = new AtomicLong(0);
+    private final AtomicLong runNanos = new AtomicLong(0);
+    private final AtomicLong maxRunNanos = new AtomicLong(0);
+
+    private PipelineStage(String name, HandlerThread thread, Looper looper, int capacity) {
+        this.name = name;
+        this.thread = thread;
+        this.handler = new Handler(looper);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Start a stage on its own thread
+     * @param priority android.os.Process thread priority
+     */
+    public static PipelineStage start(String name, int priority, int capacity) {
+        HandlerThread thread = new HandlerThread(name, priority);
+        thread.start();
+        return new PipelineStage(name, thread, thread.getLooper(), capacity);
+    }
+
+    /**
+     * A stage on the main looper, for work that must happen there (overlay commits)
+     */
+    public static PipelineStage onMainThread(String name, int capacity) {
+        return new PipelineStage(name, null, Looper.getMainLooper(), capacity);
+    }
+
+    /**
+     * Queue a task
+     * @return false if the queue is full and the task was not queued
+     */
+    public boolean submit(Runnable task) {
+        return submit(task, null);
+    }
+
+    /**
+     * Queue a task with a follow-up that runs once the task no longer counts against the capacity,
+     * e.g. to feed the stage its next piece of work
+     * @return false if the queue is full and the task was not queued
+     */
+    public boolean submit(Runnable task, Runnable onDone) {
+        int queued = depth.incrementAndGet();
+        if (queued > capacity) {
+            depth.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        raise(maxDepth, queued);
+        submitted.incrementAndGet();
+        final int taskGeneration = generation;
+        final long enqueued = SystemClock.elapsedRealtimeNanos();
+        handler.post(() -> {
+            if (taskGeneration != generation) {
+                return;
+            }
+            long start = SystemClock.elapsedRealtimeNanos();
+            record(waitNanos, maxWaitNanos, start - enqueued);
+            try {
+                task.run();
+            } finally {
+                record(runNanos, maxRunNanos, SystemClock.elapsedRealtimeNanos() - start);
+                completed.incrementAndGet();
+                // clear() already reset the depth of tasks from older generations
+                if (taskGeneration == generation) {
+                    depth.decrementAndGet();
+                }
+            }
+            if (onDone != null) {
+                onDone.run();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * True if a submit() from the only producer of this stage would be accepted
+     */
+    public boolean hasCapacity() {
+        return depth.get() < capacity;
+    }
+
+    /**
+     * Drop every queued task that has not started; a running task stops counting against the capacity
+     */
+    public void clear() {
+        generation++;
+        depth.set(0);
+    }
+
+    /**
+     * Handler of the stage's looper, for delayed and untracked posts
+     */
+    public Handler handler() {
+        return handler;
+    }
+
+    public boolean isCurrentThread() {
+        return Looper.myLooper() == handler.getLooper();
+    }
+
+    public void quit() {
+        clear();
+        if (thread != null) {
+            thread.quitSafely();
+        }
+    }
+
+    private static void record(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        raise(max, nanos);
+    }
+
+    private static void raise(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until we win or someone recorded a larger value
+        }
+    }
+
+    private static void raise(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until we win or someone recorded a larger value
+        }
+    }
+
+    /**
+     * Get queue depth and latency statistics
+     */
+    public String getStatsSummary() {
+        long done = completed.get();
+        return String.format(
+            "%s: depth %d/%d (max %d), %d done, %d rejected, wait avg %.2fms max %.2fms, run avg %.2fms max %.2fms",
+            name, depth.get(), capacity, maxDepth.get(), done, rejected.get(),
+            done > 0 ? waitNanos.get() / (done * 1_000_000f) : 0f, maxWaitNanos.get() / 1_000_000f,
+            done > 0 ? runNanos.get() / (done * 1_000_000f) : 0f, maxRunNanos.get() / 1_000_000f
+        );
+    }
+}
@@ -0,0 +1,96 @@
+package com.haram.block;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accuracy-vs-scale counters. Full-resolution verdicts are the reference; each region is
+ * re-classified shrunk by every candidate capture divisor and compared against it. Each divisor
+ * is averaged over its own samples, so a skipped sample does not count as a disagreement.
+ */
+public class ScaleBenchmark {
+    public static final int MIN_DIVISOR = 2;
+    public static final int MAX_DIVISOR = 4;
+
+    private static final int SLOTS = MAX_DIVISOR - MIN_DIVISOR + 1;
+
+    private final AtomicLong regions = new AtomicLong(0);
+    private final AtomicLong referenceMicros = new AtomicLong(0);
+    private final AtomicLong referenceBlocked = new AtomicLong(0);
+    private final AtomicLong skipped = new AtomicLong(0);
+    private final AtomicLong[] samples = newCounters();
+    private final AtomicLong[] agreements = newCounters();
+    private final AtomicLong[] missedBlocks = newCounters();
+    private final AtomicLong[] extraBlocks = newCounters();
+    private final AtomicLong[] faceCountDiffs = newCounters();
+    private final AtomicLong[] micros = newCounters();
+
+    private static AtomicLong[] newCounters() {
+        AtomicLong[] counters = new AtomicLong[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            counters[i] = new AtomicLong(0);
+        }
+        return counters;
+    }
+
+    /**
+     * Record the full-resolution reference result of a region
+     */
+    public void recordReference(int verdict, int totalMicros) {
+        regions.incrementAndGet();
+        referenceMicros.addAndGet(totalMicros);
+        if (verdict != ClassificationResults.VERDICT_SAFE) {
+            referenceBlocked.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record the result of the same region classified at 1/divisor resolution
+     */
+    public void recordScaled(int divisor, int referenceVerdict, int referenceFaces,
+                             int verdict, int faces, int totalMicros) {
+        int slot = divisor - MIN_DIVISOR;
+        if (slot < 0 || slot >= SLOTS) {
+            skipped.incrementAndGet();
+            return;
+        }
+        samples[slot].incrementAndGet();
+        boolean refBlocked = referenceVerdict != ClassificationResults.VERDICT_SAFE;
+        boolean blocked = verdict != ClassificationResults.VERDICT_SAFE;
+        if (refBlocked == blocked) {
+            agreements[slot].incrementAndGet();
+        } else if (refBlocked) {
+            missedBlocks[slot].incrementAndGet();
+        } else {
+            extraBlocks[slot].incrementAndGet();
+        }
+        faceCountDiffs[slot].addAndGet(Math.abs(referenceFaces - faces));
+        micros[slot].addAndGet(totalMicros);
+    }
+
+    /**
+     * Record regions that have a reference but no result at some divisors, e.g. a failed call
+     */
+    public void recordSkipped(int count) {
+        skipped.addAndGet(count);
+    }
+
+    /**
+     * Get benchmark summary string, one segment per divisor
+     */
+    public String getStatsSummary() {
+        long r = regions.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Scale benchmark: %d regions (%d blocked), %d samples skipped | 1/1: %.1fms",
+                r, referenceBlocked.get(), skipped.get(), r > 0 ? referenceMicros.get() / (r * 1000.0f) : 0f));
+        for (int slot = 0; slot < SLOTS; slot++) {
+            long n = samples[slot].get();
+            sb.append(String.format(" | 1/%d: %d samples, agree %.1f%%, missed %d, extra %d, face diff %.2f, %.1fms",
+                    slot + MIN_DIVISOR, n,
+                    n > 0 ? (agreements[slot].get() * 100.0f) / n : 0f,
+                    missedBlocks[slot].get(), extraBlocks[slot].get(),
+                    n > 0 ? faceCountDiffs[slot].get() / (float) n : 0f,
+                    n > 0 ? micros[slot].get() / (n * 1000.0f) : 0f));
+        }
+        return sb.toString();
+    }
+}
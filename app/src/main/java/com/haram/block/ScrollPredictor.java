@@ -0,0 +1,137 @@
+package com.haram.block;
+
+/**
+ * Extrapolates scroll motion from the deltas of recent scroll events so overlays can be drawn
+ * where content is on the frame being drawn, not where the last event left it. Views report
+ * scrolls at most every ~100ms, so without this a fling runs several frames ahead of the boxes.
+ * Pure Java; times are CLOCK_MONOTONIC nanoseconds, the base of event times and Choreographer.
+ * Not thread-safe; Motion snapshots are immutable and can be handed to other threads.
+ */
+public class ScrollPredictor {
+    private static final int MAX_SAMPLES = 4;
+    // Older samples describe a different part of the fling
+    private static final long SAMPLE_WINDOW_NANOS = 300_000_000L;
+    // Somewhat more than the recurring scroll event interval; no event for longer means stopped
+    static final long MOTION_TIMEOUT_NANOS = 150_000_000L;
+    private static final long MAX_HORIZON_NANOS = 120_000_000L;
+    // Boxes grow by this plus a fraction of the predicted travel, covering deceleration errors
+    private static final int BASE_MARGIN = 8; // px
+    private static final float MARGIN_FRACTION = 0.25f;
+    private static final int MAX_MARGIN = 240; // px
+
+    private final long[] times = new long[MAX_SAMPLES];
+    private final int[] deltaX = new int[MAX_SAMPLES];
+    private final int[] deltaY = new int[MAX_SAMPLES];
+    private int head = 0;     // next slot to write
+    private int count = 0;
+
+    /**
+     * Forget the current gesture, e.g. when another container starts scrolling
+     */
+    public void reset() {
+        count = 0;
+        head = 0;
+    }
+
+    /**
+     * Record the scroll delta one event reported
+     * @param timeNanos event time
+     * @param dx        scroll delta, content moves by -dx
+     */
+    public void addSample(long timeNanos, int dx, int dy) {
+        if (count > 0 && timeNanos - times[(head + MAX_SAMPLES - 1) % MAX_SAMPLES] > MOTION_TIMEOUT_NANOS) {
+            // A new gesture; the previous samples would average across the pause
+            reset();
+        }
+        times[head] = timeNanos;
+        deltaX[head] = dx;
+        deltaY[head] = dy;
+        head = (head + 1) % MAX_SAMPLES;
+        count = Math.min(count + 1, MAX_SAMPLES);
+    }
+
+    /**
+     * Current content velocity, anchored at the last sample
+     * @return the motion, or null until two samples of one gesture are known
+     */
+    public Motion motion() {
+        if (count < 2) {
+            return null;
+        }
+        int last = (head + MAX_SAMPLES - 1) % MAX_SAMPLES;
+        long lastTime = times[last];
+        // The oldest sample in the window only marks the start; its delta happened before it
+        long sumX = 0;
+        long sumY = 0;
+        long firstTime = lastTime;
+        for (int i = 0; i < count - 1; i++) {
+            int slot = (last - i + MAX_SAMPLES) % MAX_SAMPLES;
+            int previous = (slot + MAX_SAMPLES - 1) % MAX_SAMPLES;
+            if (lastTime - times[previous] > SAMPLE_WINDOW_NANOS) {
+                break;
+            }
+            sumX += deltaX[slot];
+            sumY += deltaY[slot];
+            firstTime = times[previous];
+        }
+        long span = lastTime - firstTime;
+        if (span <= 0) {
+            return null;
+        }
+        // Content moves opposite to the scroll position
+        return new Motion(lastTime, -sumX / (double) span, -sumY / (double) span);
+    }
+
+    /**
+     * Content velocity from one point in time
+     */
+    public static final class Motion {
+        public final long originNanos;     // time the current bounds are valid for
+        private final double velocityX;    // px per ns
+        private final double velocityY;
+
+        Motion(long originNanos, double velocityX, double velocityY) {
+            this.originNanos = originNanos;
+            this.velocityX = velocityX;
+            this.velocityY = velocityY;
+        }
+
+        /**
+         * True while content is still expected to be moving at targetNanos
+         */
+        public boolean isActive(long targetNanos) {
+            return targetNanos - originNanos <= MOTION_TIMEOUT_NANOS;
+        }
+
+        private long horizon(long targetNanos) {
+            return Math.max(0, Math.min(targetNanos - originNanos, MAX_HORIZON_NANOS));
+        }
+
+        public int offsetX(long targetNanos) {
+            return (int) Math.round(velocityX * horizon(targetNanos));
+        }
+
+        public int offsetY(long targetNanos) {
+            return (int) Math.round(velocityY * horizon(targetNanos));
+        }
+
+        /**
+         * Margin to add on both sides horizontally; grows with speed and prediction horizon
+         */
+        public int marginX(long targetNanos) {
+            return margin(velocityX, targetNanos);
+        }
+
+        public int marginY(long targetNanos) {
+            return margin(velocityY, targetNanos);
+        }
+
+        private int margin(double velocity, long targetNanos) {
+            double travel = Math.abs(velocity) * horizon(targetNanos);
+            if (travel < 1) {
+                return 0;
+            }
+            return (int) Math.min(MAX_MARGIN, BASE_MARGIN + travel * MARGIN_FRACTION);
+        }
+    }
+}
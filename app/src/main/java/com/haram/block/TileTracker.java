@@ -0,0 +1,126 @@
+package com.haram.block;
+
+/**
+ * Per-tile hashes of the last two processed capture frames. A region's signature combines the
+ * hashes of the tiles it touches, so equal signatures for the same rect mean its pixels did
+ * not change between the frames they were taken from. Only used on the inference thread.
+ */
+public class TileTracker {
+    private final int tileSize;
+    private int frameWidth;
+    private int frameHeight;
+    private int cols;
+    private int rows;
+    private long[] current = new long[0];
+    private long[] previous = new long[0];
+    private boolean hasPrevious = false;
+    private boolean compared = false;
+    private boolean valid = false;          // current holds this frame's hashes
+    private int changedTiles = 0;
+
+    // Statistics
+    private long frames = 0;
+    private long unchangedFrames = 0;
+    private long tilesCompared = 0;
+    private long tilesChanged = 0;
+
+    public TileTracker(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Start a frame; fill the returned array with the frame's tile hashes, then call endFrame()
+     */
+    public long[] beginFrame(int width, int height) {
+        long[] spare = previous;
+        previous = current;
+        current = spare;
+        if (width != frameWidth || height != frameHeight) {
+            // New capture size: nothing to compare against
+            frameWidth = width;
+            frameHeight = height;
+            cols = (width + tileSize - 1) / tileSize;
+            rows = (height + tileSize - 1) / tileSize;
+            current = new long[cols * rows];
+            previous = new long[cols * rows];
+            hasPrevious = false;
+        }
+        return current;
+    }
+
+    public void endFrame() {
+        valid = true;
+        frames++;
+        changedTiles = 0;
+        compared = hasPrevious;
+        if (compared) {
+            for (int i = 0, n = cols * rows; i < n; i++) {
+                if (current[i] != previous[i]) {
+                    changedTiles++;
+                }
+            }
+            tilesCompared += cols * rows;
+            tilesChanged += changedTiles;
+            if (changedTiles == 0) {
+                unchangedFrames++;
+            }
+        }
+        hasPrevious = true;
+    }
+
+    /**
+     * The frame could not be hashed: current holds stale hashes, so signatures are 0 until the
+     * next good frame and that frame has nothing to compare against
+     */
+    public void discardFrame() {
+        valid = false;
+        compared = false;
+        hasPrevious = false;
+    }
+
+    /**
+     * Tiles that differ from the previous frame, or -1 if there was nothing to compare
+     */
+    public int getChangedTiles() {
+        return compared ? changedTiles : -1;
+    }
+
+    /**
+     * Combined hash of the tiles overlapping [left, top, right, bottom) in capture coordinates
+     * @return the signature, 0 if the rect lies outside the frame or the frame was discarded
+     */
+    public long signature(int left, int top, int right, int bottom) {
+        if (!valid) {
+            return 0;
+        }
+        int c0 = Math.max(0, left / tileSize);
+        int r0 = Math.max(0, top / tileSize);
+        int c1 = Math.min(cols - 1, (right - 1) / tileSize);
+        int r1 = Math.min(rows - 1, (bottom - 1) / tileSize);
+        if (left >= right || top >= bottom || c0 > c1 || r0 > r1) {
+            return 0;
+        }
+        long h = 0xCBF29CE484222325L;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                h = (h ^ current[r * cols + c]) * 0x100000001B3L;
+            }
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Get statistics on tile changes between processed frames
+     */
+    public String getStatsSummary() {
+        return String.format(
+            "Tiles: %d frames (%d unchanged), %.1f%% of tiles changed between frames, %dx%d tiles of %dpx",
+            frames, unchangedFrames, tilesCompared > 0 ? tilesChanged * 100f / tilesCompared : 0f,
+            cols, rows, tileSize
+        );
+    }
+}
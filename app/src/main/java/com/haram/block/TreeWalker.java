@@ -0,0 +1,232 @@
+package com.haram.block;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+import java.util.Arrays;
+
+/**
+ * Iterative depth-first walk of an accessibility tree with an explicit stack. Runs in slices
+ * bounded by time and node count so a walk can be resumed on the next frame, skips subtrees
+ * whose bounds lie outside the viewport, and counts nodes visited and IPC calls.
+ * Nodes are visited in the same pre-order as a recursive walk. Not thread-safe.
+ */
+public class TreeWalker {
+    private static final String TAG = "TreeWalker";
+
+    public interface Visitor {
+        /**
+         * @param node     node being visited; only valid during the call
+         * @param depth    depth below the window root
+         * @param pathIds  ViewIdentity of the node's ancestors and the node itself, [0, depth]
+         * @param bounds   node bounds in screen coordinates; reused between calls
+         */
+        void visit(AccessibilityNodeInfo node, int depth, long[] pathIds, Rect bounds);
+    }
+
+    private final int maxDepth;
+    private final Rect viewport = new Rect();
+    private final Rect bounds = new Rect();
+
+    // Explicit stack of nodes still to visit
+    private AccessibilityNodeInfo[] stackNodes = new AccessibilityNodeInfo[64];
+    private int[] stackDepths = new int[64];
+    private long[] stackIds = new long[64];
+    private int stackSize = 0;
+    private final long[] pathIds;
+
+    // Current walk
+    private int maxNodes;
+    private boolean active = false;
+    private boolean truncated = false;
+    private long walkStart;
+    private int nodesVisited;
+    private int ipcCalls;
+    private int subtreesPruned;
+    private int slices;
+
+    // All walks
+    private long totalWalks = 0;
+    private long totalNodesVisited = 0;
+    private long totalIpcCalls = 0;
+    private long totalSubtreesPruned = 0;
+    private long totalAbandoned = 0;
+    private long totalNodeErrors = 0;
+
+    public TreeWalker(int maxDepth) {
+        this.maxDepth = maxDepth;
+        this.pathIds = new long[maxDepth + 1];
+    }
+
+    /**
+     * Begin a walk, discarding any unfinished one. The walker keeps its own copy of root.
+     * @param rootId    ViewIdentity of root
+     * @param rootDepth depth of root below its window root (0 for the window root)
+     * @param viewport  subtrees entirely outside this rect are skipped, null to visit everything
+     * @param maxNodes  the walk ends (truncated) after this many nodes
+     */
+    public void start(AccessibilityNodeInfo root, long rootId, int rootDepth, Rect viewport, int maxNodes) {
+        cancel();
+        if (viewport != null) {
+            this.viewport.set(viewport);
+        } else {
+            this.viewport.set(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+        this.maxNodes = maxNodes;
+        walkStart = SystemClock.elapsedRealtime();
+        nodesVisited = 0;
+        ipcCalls = 0;
+        subtreesPruned = 0;
+        slices = 0;
+        truncated = false;
+        active = true;
+        push(AccessibilityNodeInfo.obtain(root), rootDepth, rootId);
+    }
+
+    /**
+     * Visit nodes until the walk completes or a budget runs out
+     * @return true if the walk is complete, false if resume() must be called again
+     * @throws IllegalStateException if a node went stale (recycled, or its window gone); the walk
+     * is abandoned, since what is left of it can no longer be trusted
+     */
+    public boolean resume(Visitor visitor, long timeBudgetNanos, int nodeBudget) {
+        if (!active) {
+            return true;
+        }
+        slices++;
+        long deadline = SystemClock.elapsedRealtimeNanos() + timeBudgetNanos;
+        int budget = nodeBudget;
+        while (stackSize > 0) {
+            if (budget-- <= 0 || SystemClock.elapsedRealtimeNanos() > deadline) {
+                return false;
+            }
+            if (nodesVisited >= maxNodes) {
+                truncated = true;
+                break;
+            }
+
+            stackSize--;
+            AccessibilityNodeInfo node = stackNodes[stackSize];
+            int depth = stackDepths[stackSize];
+            long id = stackIds[stackSize];
+            stackNodes[stackSize] = null;
+            try {
+                nodesVisited++;
+                pathIds[depth] = id;
+                node.getBoundsInScreen(bounds);
+                if (!Rect.intersects(bounds, viewport) && !bounds.isEmpty()) {
+                    // Off-screen subtree, e.g. the far end of a long list or web page
+                    subtreesPruned++;
+                    continue;
+                }
+
+                visitor.visit(node, depth, pathIds, bounds);
+
+                if (depth < maxDepth) {
+                    // Push children in reverse so the first child is visited first
+                    int childCount = node.getChildCount();
+                    for (int i = childCount - 1; i >= 0; i--) {
+                        AccessibilityNodeInfo child = node.getChild(i);
+                        ipcCalls++;
+                        if (child != null) {
+                            push(child, depth + 1, ViewIdentity.child(id, i, child.getViewIdResourceName()));
+                        }
+                    }
+                }
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Stale node at depth " + depth + ", walk abandoned after " + nodesVisited +
+                        " nodes: " + e.getMessage());
+                totalAbandoned++;
+                cancel();
+                throw e;
+            } catch (Exception e) {
+                // Local to this node; skip its subtree and keep walking
+                Log.w(TAG, "Error visiting node at depth " + depth + ", subtree skipped", e);
+                totalNodeErrors++;
+            } finally {
+                recycleQuietly(node);
+            }
+        }
+        finish();
+        return true;
+    }
+
+    private void push(AccessibilityNodeInfo node, int depth, long id) {
+        if (stackSize == stackNodes.length) {
+            stackNodes = Arrays.copyOf(stackNodes, stackSize * 2);
+            stackDepths = Arrays.copyOf(stackDepths, stackSize * 2);
+            stackIds = Arrays.copyOf(stackIds, stackSize * 2);
+        }
+        stackNodes[stackSize] = node;
+        stackDepths[stackSize] = depth;
+        stackIds[stackSize] = id;
+        stackSize++;
+    }
+
+    private void finish() {
+        releaseStack();
+        active = false;
+        totalWalks++;
+        totalNodesVisited += nodesVisited;
+        totalIpcCalls += ipcCalls;
+        totalSubtreesPruned += subtreesPruned;
+    }
+
+    private void releaseStack() {
+        for (int i = 0; i < stackSize; i++) {
+            recycleQuietly(stackNodes[i]);
+            stackNodes[i] = null;
+        }
+        stackSize = 0;
+    }
+
+    private static void recycleQuietly(AccessibilityNodeInfo node) {
+        try {
+            node.recycle();
+        } catch (IllegalStateException e) {
+            // Already recycled; nothing left to release
+        }
+    }
+
+    /**
+     * Abandon an unfinished walk and release its nodes
+     */
+    public void cancel() {
+        if (active) {
+            releaseStack();
+            active = false;
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * True if the last walk hit its node limit before visiting everything
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getNodesVisited() {
+        return nodesVisited;
+    }
+
+    public int getIpcCalls() {
+        return ipcCalls;
+    }
+
+    /**
+     * Get statistics of the last walk and of all walks
+     */
+    public String getStatsSummary() {
+        return String.format(
+            "Walk: %d nodes, %d IPC, %d pruned, %d slices, %dms%s | All %d walks: %d nodes, %d IPC, %d pruned, %d abandoned, %d node errors",
+            nodesVisited, ipcCalls, subtreesPruned, slices, SystemClock.elapsedRealtime() - walkStart,
+            truncated ? " (truncated)" : "",
+            totalWalks, totalNodesVisited, totalIpcCalls, totalSubtreesPruned, totalAbandoned, totalNodeErrors
+        );
+    }
+}
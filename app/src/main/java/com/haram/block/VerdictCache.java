@@ -0,0 +1,114 @@
+package com.haram.block;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of classification verdicts keyed by the perceptual hash of the image region
+ * and the package it was captured from, the same key as VerdictStore.
+ * Lets recycled feed rows and re-laid-out views skip the native detector/classifier.
+ */
+public class VerdictCache {
+    private final int capacity;
+    private final LinkedHashMap<Key, Boolean> entries;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    public VerdictCache(int capacity) {
+        this.capacity = capacity;
+        // Access order gives us LRU iteration for free
+        this.entries = new LinkedHashMap<Key, Boolean>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                if (size() > VerdictCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Look up a verdict
+     * @param hash Perceptual hash of the region
+     * @param packageHash Hash of the package the region was captured from
+     * @return The cached verdict, or null on a miss
+     */
+    public synchronized Boolean get(long hash, int packageHash) {
+        Boolean verdict = entries.get(new Key(hash, packageHash));
+        if (verdict != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return verdict;
+    }
+
+    /**
+     * Store a verdict, evicting the least recently used entry when full
+     */
+    public synchronized void put(long hash, int packageHash, boolean verdict) {
+        entries.put(new Key(hash, packageHash), verdict);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Key {
+        final long hash;
+        final int packageHash;
+
+        Key(long hash, int packageHash) {
+            this.hash = hash;
+            this.packageHash = packageHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && packageHash == other.packageHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + packageHash;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Get cache statistics summary string
+     */
+    public String getStatsSummary() {
+        long h = hits.get();
+        long m = misses.get();
+        long total = h + m;
+        return String.format(
+            "Verdict cache: %d/%d entries | Hits: %d | Misses: %d | Evictions: %d | Hit rate: %.1f%%",
+            size(), capacity, h, m, evictions.get(), total > 0 ? (h * 100.0f) / total : 0f
+        );
+    }
+}
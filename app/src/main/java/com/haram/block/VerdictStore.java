@@ -0,0 +1,214 @@
+package com.haram.block;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent verdict store backed by a fixed-size memory-mapped file.
+ * Survives service rebinds and process death so already seen images are not classified again.
+ *
+ * Layout: a small header followed by a power-of-two table of fixed-size slots,
+ * addressed by content hash + package hash with a bounded linear probe window.
+ * Lookups and inserts read/write the mapping directly and never allocate.
+ */
+public class VerdictStore {
+    private static final String TAG = "VerdictStore";
+
+    public static final int MISS = 0;
+    public static final int SAFE = 1;
+    public static final int BLOCKED = 2;
+
+    private static final int MAGIC = 0x48425653; // "HBVS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    // Slot: content hash (8) | package hash (4) | verdict (4) | saved at (8)
+    private static final int SLOT_SIZE = 24;
+    private static final int OFF_HASH = 0;
+    private static final int OFF_PACKAGE = 8;
+    private static final int OFF_VERDICT = 12;
+    private static final int OFF_TIME = 16;
+
+    private static final int DEFAULT_CAPACITY = 16384; // slots, must be a power of two
+    private static final int PROBE_WINDOW = 8;
+    private static final long ENTRY_TTL = 7L * 24 * 60 * 60 * 1000; // ms
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final int mask;
+
+    private VerdictStore(RandomAccessFile file, FileChannel channel, MappedByteBuffer map, int capacity) {
+        this.file = file;
+        this.channel = channel;
+        this.map = map;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Map the store file, creating or resetting it when missing or incompatible.
+     * Only the header is touched here; pages are faulted in lazily by lookups.
+     * @return The opened store, or null if the file cannot be mapped
+     */
+    public static VerdictStore open(File path) {
+        return open(path, DEFAULT_CAPACITY);
+    }
+
+    static VerdictStore open(File path, int capacity) {
+        long start = System.nanoTime();
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(path, "rw");
+            boolean reset = raf.length() != size;
+            if (!reset) {
+                raf.seek(0);
+                reset = raf.readInt() != MAGIC || raf.readInt() != VERSION || raf.readInt() != capacity;
+            }
+            if (reset) {
+                // Truncating and re-extending zero-fills every slot
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.BIG_ENDIAN);
+            if (reset) {
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                map.putInt(8, capacity);
+            }
+
+            Log.i(TAG, "Opened " + path.getName() + " (" + capacity + " slots, reset=" + reset + ") in "
+                    + (System.nanoTime() - start) / 1000 + "us");
+            return new VerdictStore(raf, channel, map, capacity);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open verdict store: " + e.getMessage(), e);
+            if (raf != null) {
+                try { raf.close(); } catch (IOException ignored) {}
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Look up a verdict
+     * @param contentHash Perceptual hash of the region (non-zero)
+     * @param packageHash Hash of the package the region was captured from
+     * @return SAFE, BLOCKED or MISS when absent or expired
+     */
+    public synchronized int get(long contentHash, int packageHash) {
+        long now = System.currentTimeMillis();
+        int home = indexFor(contentHash, packageHash);
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            int slot = slotOffset((home + i) & mask);
+            if (map.getLong(slot + OFF_HASH) == contentHash && map.getInt(slot + OFF_PACKAGE) == packageHash) {
+                if (now - map.getLong(slot + OFF_TIME) > ENTRY_TTL) {
+                    return MISS;
+                }
+                return map.getInt(slot + OFF_VERDICT);
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Store a verdict. Reuses the matching slot, else the first empty or expired one
+     * in the probe window, else the oldest entry in the window.
+     */
+    public synchronized void put(long contentHash, int packageHash, int verdict) {
+        if (contentHash == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int home = indexFor(contentHash, packageHash);
+        int target = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            int slot = slotOffset((home + i) & mask);
+            long hash = map.getLong(slot + OFF_HASH);
+            if (hash == contentHash && map.getInt(slot + OFF_PACKAGE) == packageHash) {
+                target = slot;
+                break;
+            }
+            long savedAt = hash == 0 ? Long.MIN_VALUE : map.getLong(slot + OFF_TIME);
+            if (savedAt < oldest) {
+                oldest = savedAt;
+                target = slot;
+            }
+        }
+        map.putLong(target + OFF_HASH, contentHash);
+        map.putInt(target + OFF_PACKAGE, packageHash);
+        map.putInt(target + OFF_VERDICT, verdict);
+        map.putLong(target + OFF_TIME, now);
+    }
+
+    /**
+     * Clear expired slots so they are reused before live entries get evicted.
+     * Lookups scan the whole probe window, so emptying a slot never breaks a chain.
+     * @return Number of slots cleared
+     */
+    public synchronized int compact() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int cleared = 0;
+        int live = 0;
+        for (int i = 0; i < capacity; i++) {
+            int slot = slotOffset(i);
+            if (map.getLong(slot + OFF_HASH) == 0) {
+                continue;
+            }
+            long savedAt = map.getLong(slot + OFF_TIME);
+            if (now - savedAt > ENTRY_TTL || savedAt > now) {
+                map.putLong(slot + OFF_HASH, 0);
+                map.putInt(slot + OFF_PACKAGE, 0);
+                map.putInt(slot + OFF_VERDICT, MISS);
+                map.putLong(slot + OFF_TIME, 0);
+                cleared++;
+            } else {
+                live++;
+            }
+        }
+        Log.i(TAG, "Compacted: " + live + " live, " + cleared + " expired cleared in "
+                + (System.nanoTime() - start) / 1000 + "us");
+        return cleared;
+    }
+
+    /**
+     * Flush dirty pages and release the mapping's file handle
+     */
+    public synchronized void close() {
+        try {
+            map.force();
+        } catch (Throwable t) {
+            Log.w(TAG, "Error flushing verdict store", t);
+        }
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing verdict store", e);
+        }
+    }
+
+    private int indexFor(long contentHash, int packageHash) {
+        long h = contentHash ^ (packageHash * 0x9E3779B97F4A7C15L);
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        return (int) h & mask;
+    }
+
+    private static int slotOffset(int index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,194 @@
+package com.haram.block;
+
+/**
+ * Video mode for SurfaceView / VideoView / player views, whose pixels change without any
+ * layout change. Each video view is re-sampled every interval within a per-view inference
+ * budget (a token bucket), and its verdicts are smoothed: one blocked sample blocks at once,
+ * unblocking takes UNBLOCK_AFTER safe samples in a row. Blocked views are not sampled (the
+ * capture shows our overlay over them); a layout change resets their verdict instead. Also
+ * keeps inference cost for video and still views apart. Only used on the inference thread.
+ */
+public class VideoSampler {
+    private static final int BURST = 2;             // samples a view can take back to back
+    private static final int UNBLOCK_AFTER = 2;     // consecutive safe samples to unblock
+
+    private static final class Track {
+        long lastSample;        // ms, 0 before the first sample
+        double tokens = BURST;
+        long lastRefill;        // ms
+        int verdict = ClassificationResults.VERDICT_ERROR;   // smoothed, ERROR until a real sample
+        int safeStreak = 0;
+        long frame;             // last processed frame the view was visible in
+    }
+
+    private final LongObjectMap<Track> tracks = new LongObjectMap<>();
+    private long intervalMs;
+    private double tokensPerMs;
+
+    // Statistics
+    private long samples = 0;
+    private long overBudget = 0;
+    private long smoothedChanges = 0;
+    private long videoInferences = 0;
+    private long videoMicros = 0;
+    private long videoCacheHits = 0;
+    private long stillInferences = 0;
+    private long stillMicros = 0;
+
+    /**
+     * @param intervalMs          minimum time between samples of one view
+     * @param inferencesPerMinute sustained inference budget of one view
+     */
+    public VideoSampler(long intervalMs, int inferencesPerMinute) {
+        this.intervalMs = Math.max(1, intervalMs);
+        this.tokensPerMs = Math.max(1, inferencesPerMinute) / 60_000.0;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * True if the view is due for a sample and has budget left; counts a skip when only the
+     * budget is missing
+     */
+    public boolean isDue(long viewId, long now, long frame) {
+        Track track = track(viewId, now, frame);
+        if (track.lastSample != 0 && now - track.lastSample < intervalMs) {
+            return false;
+        }
+        refill(track, now);
+        if (track.tokens < 1) {
+            overBudget++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The view's current pixels are being classified
+     */
+    public void onSampled(long viewId, long now, long frame) {
+        Track track = track(viewId, now, frame);
+        refill(track, now);
+        track.tokens = Math.max(0, track.tokens - 1);
+        track.lastSample = now;
+        samples++;
+    }
+
+    /**
+     * A sample was answered from the verdict cache, no inference ran: give its token back
+     */
+    public void refund(long viewId) {
+        Track track = tracks.get(viewId);
+        if (track != null) {
+            track.tokens = Math.min(BURST, track.tokens + 1);
+            videoCacheHits++;
+        }
+    }
+
+    /**
+     * Fold a sample's verdict into the view's smoothed verdict
+     * @return the smoothed verdict to apply, or verdict unchanged for views not sampled as video
+     */
+    public int smooth(long viewId, int verdict) {
+        Track track = tracks.get(viewId);
+        if (track == null) {
+            return verdict;
+        }
+        int previous = track.verdict;
+        if (verdict == ClassificationResults.VERDICT_BLOCKED) {
+            track.verdict = verdict;
+            track.safeStreak = 0;
+        } else if (verdict == ClassificationResults.VERDICT_SAFE) {
+            track.safeStreak++;
+            if (previous != ClassificationResults.VERDICT_BLOCKED || track.safeStreak >= UNBLOCK_AFTER) {
+                track.verdict = verdict;
+            }
+        } else if (previous == ClassificationResults.VERDICT_ERROR) {
+            // A failed sample only counts until a real verdict exists
+            track.verdict = verdict;
+        }
+        if (previous != ClassificationResults.VERDICT_ERROR && track.verdict != previous) {
+            smoothedChanges++;
+        }
+        return track.verdict;
+    }
+
+    /**
+     * Forget the smoothed verdict, e.g. after a layout change, so the next sample stands alone
+     */
+    public void resetVerdict(long viewId) {
+        Track track = tracks.get(viewId);
+        if (track != null) {
+            track.verdict = ClassificationResults.VERDICT_ERROR;
+            track.safeStreak = 0;
+        }
+    }
+
+    public boolean isTracked(long viewId) {
+        return tracks.get(viewId) != null;
+    }
+
+    /**
+     * Record the worker time of one native inference
+     */
+    public void recordInference(boolean video, long micros) {
+        if (video) {
+            videoInferences++;
+            videoMicros += micros;
+        } else {
+            stillInferences++;
+            stillMicros += micros;
+        }
+    }
+
+    /**
+     * Forget views not visible in this frame once they outnumber the visible ones
+     */
+    public void sweep(int views, long frame) {
+        if (tracks.size() <= views * 2 + 16) {
+            return;
+        }
+        long[] stale = new long[tracks.size()];
+        int count = 0;
+        for (int slot = 0, n = tracks.capacity(); slot < n; slot++) {
+            Track track = tracks.valueAt(slot);
+            if (track != null && track.frame != frame) {
+                stale[count++] = tracks.keyAt(slot);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            tracks.remove(stale[i]);
+        }
+    }
+
+    private Track track(long viewId, long now, long frame) {
+        Track track = tracks.get(viewId);
+        if (track == null) {
+            track = new Track();
+            track.lastRefill = now;
+            tracks.put(viewId, track);
+        }
+        track.frame = frame;
+        return track;
+    }
+
+    private void refill(Track track, long now) {
+        track.tokens = Math.min(BURST, track.tokens + (now - track.lastRefill) * tokensPerMs);
+        track.lastRefill = now;
+    }
+
+    /**
+     * Get sampling statistics and inference cost of video vs still views
+     */
+    public String getStatsSummary() {
+        return String.format(
+            "Video: %d samples every %dms, %d over budget, %d cache hits, %d smoothed flips | " +
+            "Inference cost: video %d x %.1fms = %dms, still %d x %.1fms = %dms",
+            samples, intervalMs, overBudget, videoCacheHits, smoothedChanges,
+            videoInferences, videoInferences > 0 ? videoMicros / (videoInferences * 1000f) : 0f, videoMicros / 1000,
+            stillInferences, stillInferences > 0 ? stillMicros / (stillInferences * 1000f) : 0f, stillMicros / 1000
+        );
+    }
+}
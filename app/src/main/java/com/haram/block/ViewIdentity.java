@@ -0,0 +1,39 @@
+package com.haram.block;
+
+/**
+ * 64-bit identity of an accessibility node, derived from its window id, its view id resource name
+ * and its child-index path from the window root. Built incrementally while walking the tree, so a
+ * refresh never allocates path strings. Never 0, which LongObjectMap reserves for empty slots.
+ */
+public final class ViewIdentity {
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private ViewIdentity() {
+    }
+
+    /**
+     * Identity of a window's root node
+     */
+    public static long root(int windowId, String viewIdResourceName) {
+        return child(mix(GOLDEN ^ windowId), 0, viewIdResourceName);
+    }
+
+    /**
+     * Identity of the index-th child of the node identified by parent
+     */
+    public static long child(long parent, int index, String viewIdResourceName) {
+        long h = mix(parent + GOLDEN * (index + 1));
+        if (viewIdResourceName != null) {
+            // String caches its hash, so this is free after the first call
+            h = mix(h ^ viewIdResourceName.hashCode());
+        }
+        return h != 0 ? h : 1;
+    }
+
+    // splitmix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
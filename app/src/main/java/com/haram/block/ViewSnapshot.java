@@ -0,0 +1,45 @@
+package com.haram.block;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable set of view states published by the tree stage. Every publish gets the next epoch,
+ * so a classification result can tell which snapshot its frame was matched against.
+ */
+public final class ViewSnapshot {
+    public static final ViewSnapshot EMPTY = new ViewSnapshot(0, new ViewState[0], null);
+
+    public final long epoch;
+    // Motion of the scrolling views at publish time, null when nothing scrolls
+    public final ScrollPredictor.Motion motion;
+    private final ViewState[] views;
+    private final List<ViewState> list;
+
+    ViewSnapshot(long epoch, ViewState[] views, ScrollPredictor.Motion motion) {
+        this.epoch = epoch;
+        this.motion = motion;
+        this.views = views;
+        this.list = Collections.unmodifiableList(Arrays.asList(views));
+    }
+
+    public int size() {
+        return views.length;
+    }
+
+    public boolean isEmpty() {
+        return views.length == 0;
+    }
+
+    public ViewState get(int index) {
+        return views[index];
+    }
+
+    /**
+     * Read-only list view, no copy
+     */
+    public List<ViewState> asList() {
+        return list;
+    }
+}
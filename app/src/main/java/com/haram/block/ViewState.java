@@ -0,0 +1,59 @@
+package com.haram.block;
+
+import android.graphics.Rect;
+
+/**
+ * Frozen copy of one target view as the tree stage last saw it. Shared with the inference and
+ * render stages through a ViewSnapshot without locking, so nothing here changes after
+ * construction; bounds is a private copy and must not be modified by readers.
+ */
+public final class ViewState {
+    public final long viewId;           // ViewIdentity of the node
+    public final int windowId;
+    public final int packageHash;       // package of the window, verdict store key
+    public final String nodeType;
+    public final boolean video;         // SurfaceView / VideoView / player, content changes on its own
+    public final Rect bounds;
+    public final int visibilityPercentage;
+    public final boolean isClassified;
+    public final boolean classificationResult;
+    public final int verdict;
+    public final long contentEpoch;     // first snapshot epoch showing this view's current content
+    public final boolean scrolling;     // bounds were moved by scroll deltas, content may still be moving
+
+    ViewState(ImageViewAccessibilityService.ImageViewInfo info) {
+        this.viewId = info.viewId;
+        this.windowId = info.windowId;
+        this.packageHash = info.packageHash;
+        this.nodeType = info.nodeType;
+        this.video = info.video;
+        this.bounds = new Rect(info.bounds);
+        this.visibilityPercentage = info.visibilityPercentage;
+        this.isClassified = info.isClassified;
+        this.classificationResult = info.classificationResult;
+        this.verdict = info.verdict;
+        this.contentEpoch = info.contentEpoch;
+        this.scrolling = info.scrollX != 0 || info.scrollY != 0;
+    }
+
+    /**
+     * True if this view is visible enough to classify and has no current verdict
+     */
+    public boolean needsClassification(int visibilityThreshold) {
+        return !isClassified && visibilityPercentage > visibilityThreshold;
+    }
+
+    /**
+     * True if freezing info again would give an equal state, so this one can be reused
+     */
+    boolean matches(ImageViewAccessibilityService.ImageViewInfo info) {
+        return viewId == info.viewId
+                && visibilityPercentage == info.visibilityPercentage
+                && isClassified == info.isClassified
+                && classificationResult == info.classificationResult
+                && verdict == info.verdict
+                && contentEpoch == info.contentEpoch
+                && scrolling == (info.scrollX != 0 || info.scrollY != 0)
+                && bounds.equals(info.bounds);
+    }
+}
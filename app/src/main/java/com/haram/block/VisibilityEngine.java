@@ -0,0 +1,263 @@
+package com.haram.block;
+
+import java.util.Arrays;
+
+/**
+ * Computes how much of a view is on screen and not covered by fixed elements (toolbars,
+ * bottom bars, system bars). Fixed elements are bucketed in a uniform grid per package, and the
+ * covered area is the exact area of their union, found with a sweep over the overlapping rects.
+ * Plain Java with no Android dependencies, so it can be benchmarked on the JVM.
+ * Queries reuse scratch buffers: not thread-safe.
+ */
+public class VisibilityEngine {
+    private static final int CELL_SIZE = 128; // px
+
+    private int screenWidth;
+    private int screenHeight;
+
+    // Query scratch, grown on demand
+    private int[] clipped = new int[16 * 4];
+    private int[] edges = new int[32];
+    private int[] spans = new int[32];
+    private int queryStamp = 0;
+
+    /**
+     * Fixed elements of one package, indexed by grid cell. The elements and grid never change
+     * once built, but every query writes the stamps, so an index is queried from one thread
+     * (the engine's) at a time.
+     */
+    public static final class Index {
+        final int[] rects;        // l, t, r, b per element
+        final int count;
+        final int columns;
+        final int rows;
+        final int[] cellStart;    // elements of cell c are cellItems[cellStart[c] .. cellStart[c + 1])
+        final int[] cellItems;
+        final int[] stamps;       // last query that looked at each element, query scratch
+
+        Index(int[] rects, int count, int columns, int rows, int[] cellStart, int[] cellItems) {
+            this.rects = rects;
+            this.count = count;
+            this.columns = columns;
+            this.rows = rows;
+            this.cellStart = cellStart;
+            this.cellItems = cellItems;
+            this.stamps = new int[count];
+        }
+
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * Set the screen size; call once per configuration, then rebuild indexes
+     */
+    public void setScreen(int width, int height) {
+        screenWidth = width;
+        screenHeight = height;
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
+    }
+
+    /**
+     * Build the grid index of a package's fixed elements
+     * @param rects l, t, r, b per element; copied
+     * @param count number of elements
+     */
+    public Index buildIndex(int[] rects, int count) {
+        int columns = Math.max(1, (screenWidth + CELL_SIZE - 1) / CELL_SIZE);
+        int rows = Math.max(1, (screenHeight + CELL_SIZE - 1) / CELL_SIZE);
+        int[] copy = Arrays.copyOf(rects, count * 4);
+        int cells = columns * rows;
+
+        // Count elements per cell, prefix-sum into start offsets, then fill
+        int[] cellStart = new int[cells + 1];
+        for (int i = 0; i < count; i++) {
+            if (!isEmpty(copy, i)) {
+                for (int row = cellRow(copy[i * 4 + 1], rows); row <= cellRow(copy[i * 4 + 3] - 1, rows); row++) {
+                    for (int col = cellColumn(copy[i * 4], columns); col <= cellColumn(copy[i * 4 + 2] - 1, columns); col++) {
+                        cellStart[row * columns + col + 1]++;
+                    }
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] cellItems = new int[cellStart[cells]];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < count; i++) {
+            if (!isEmpty(copy, i)) {
+                for (int row = cellRow(copy[i * 4 + 1], rows); row <= cellRow(copy[i * 4 + 3] - 1, rows); row++) {
+                    for (int col = cellColumn(copy[i * 4], columns); col <= cellColumn(copy[i * 4 + 2] - 1, columns); col++) {
+                        cellItems[fill[row * columns + col]++] = i;
+                    }
+                }
+            }
+        }
+        return new Index(copy, count, columns, rows, cellStart, cellItems);
+    }
+
+    private static boolean isEmpty(int[] rects, int i) {
+        return rects[i * 4 + 2] <= rects[i * 4] || rects[i * 4 + 3] <= rects[i * 4 + 1];
+    }
+
+    private static int cellColumn(int x, int columns) {
+        return clampCell(x / CELL_SIZE, columns);
+    }
+
+    private static int cellRow(int y, int rows) {
+        return clampCell(y / CELL_SIZE, rows);
+    }
+
+    private static int clampCell(int cell, int cells) {
+        return Math.max(0, Math.min(cells - 1, cell));
+    }
+
+    /**
+     * Percentage (0-100) of the view's area that is on screen and not covered by fixed elements
+     * @param index fixed elements of the current package, or null for none
+     */
+    public int visiblePercent(Index index, int left, int top, int right, int bottom) {
+        long totalArea = (long) Math.max(0, right - left) * Math.max(0, bottom - top);
+        if (totalArea == 0) {
+            return 0;
+        }
+        int l = Math.max(left, 0);
+        int t = Math.max(top, 0);
+        int r = Math.min(right, screenWidth);
+        int b = Math.min(bottom, screenHeight);
+        if (l >= r || t >= b) {
+            return 0;
+        }
+        long visibleArea = (long) (r - l) * (b - t);
+        if (index != null && index.count > 0) {
+            visibleArea -= coveredArea(index, l, t, r, b);
+        }
+        return (int) Math.max(0, Math.min(100, (visibleArea * 100) / totalArea));
+    }
+
+    /**
+     * Exact area of the union of fixed elements inside [l, r) x [t, b)
+     */
+    private long coveredArea(Index index, int l, int t, int r, int b) {
+        // Gather the elements overlapping the view, clipped to it; an element spanning
+        // several cells is only taken once thanks to the query stamp
+        int stamp = ++queryStamp;
+        if (stamp == 0) {
+            Arrays.fill(index.stamps, 0);
+            stamp = queryStamp = 1;
+        }
+        int n = 0;
+        int c0 = cellColumn(l, index.columns);
+        int c1 = cellColumn(r - 1, index.columns);
+        int r0 = cellRow(t, index.rows);
+        int r1 = cellRow(b - 1, index.rows);
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                int cell = row * index.columns + col;
+                for (int k = index.cellStart[cell]; k < index.cellStart[cell + 1]; k++) {
+                    int e = index.cellItems[k];
+                    if (index.stamps[e] == stamp) {
+                        continue;
+                    }
+                    index.stamps[e] = stamp;
+                    int el = Math.max(l, index.rects[e * 4]);
+                    int et = Math.max(t, index.rects[e * 4 + 1]);
+                    int er = Math.min(r, index.rects[e * 4 + 2]);
+                    int eb = Math.min(b, index.rects[e * 4 + 3]);
+                    if (el >= er || et >= eb) {
+                        continue;
+                    }
+                    if ((n + 1) * 4 > clipped.length) {
+                        clipped = Arrays.copyOf(clipped, clipped.length * 2);
+                    }
+                    clipped[n * 4] = el;
+                    clipped[n * 4 + 1] = et;
+                    clipped[n * 4 + 2] = er;
+                    clipped[n * 4 + 3] = eb;
+                    n++;
+                }
+            }
+        }
+        if (n == 0) {
+            return 0;
+        }
+        if (n == 1) {
+            return (long) (clipped[2] - clipped[0]) * (clipped[3] - clipped[1]);
+        }
+
+        // Sweep vertical slabs between consecutive x edges, merging the y spans active in each
+        if (edges.length < n * 2) {
+            edges = new int[n * 2];
+            spans = new int[n * 2];
+        }
+        for (int i = 0; i < n; i++) {
+            edges[i * 2] = clipped[i * 4];
+            edges[i * 2 + 1] = clipped[i * 4 + 2];
+        }
+        Arrays.sort(edges, 0, n * 2);
+
+        long area = 0;
+        for (int x = 0; x + 1 < n * 2; x++) {
+            int x0 = edges[x];
+            int x1 = edges[x + 1];
+            if (x0 == x1) {
+                continue;
+            }
+            int spanCount = 0;
+            for (int i = 0; i < n; i++) {
+                if (clipped[i * 4] <= x0 && clipped[i * 4 + 2] >= x1) {
+                    spans[spanCount * 2] = clipped[i * 4 + 1];
+                    spans[spanCount * 2 + 1] = clipped[i * 4 + 3];
+                    spanCount++;
+                }
+            }
+            area += (long) (x1 - x0) * unionLength(spans, spanCount);
+        }
+        return area;
+    }
+
+    // Total length of the union of [start, end) spans; sorts the spans by start in place
+    private static long unionLength(int[] spans, int count) {
+        for (int i = 1; i < count; i++) {
+            int start = spans[i * 2];
+            int end = spans[i * 2 + 1];
+            int j = i - 1;
+            while (j >= 0 && spans[j * 2] > start) {
+                spans[(j + 1) * 2] = spans[j * 2];
+                spans[(j + 1) * 2 + 1] = spans[j * 2 + 1];
+                j--;
+            }
+            spans[(j + 1) * 2] = start;
+            spans[(j + 1) * 2 + 1] = end;
+        }
+        long length = 0;
+        int runStart = 0;
+        int runEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int start = spans[i * 2];
+            int end = spans[i * 2 + 1];
+            if (start > runEnd) {
+                if (runEnd > runStart) {
+                    length += runEnd - runStart;
+                }
+                runStart = start;
+                runEnd = end;
+            } else if (end > runEnd) {
+                runEnd = end;
+            }
+        }
+        if (runEnd > runStart) {
+            length += runEnd - runStart;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,59 @@
+package com.haram.block;
+
+import android.graphics.Rect;
+import android.view.accessibility.AccessibilityWindowInfo;
+
+/**
+ * What the service knows about one on-screen window: its target views, its own fixed
+ * elements and the occluders derived from them and from the windows stacked above it.
+ * Only touched on the tree stage.
+ */
+public class WindowCache {
+    final int windowId;
+    AccessibilityWindowInfo info;   // null when the window list is unavailable and the active root is used
+    int type;
+    int layer;
+    final Rect bounds = new Rect();
+    String packageName = "";
+
+    // Keyed by ViewIdentity; the map is replaced by each walk, never modified once in place
+    LongObjectMap<ImageViewAccessibilityService.ImageViewInfo> views = new LongObjectMap<>();
+    // l, t, r, b of the toolbars and bars found by the last walk
+    int[] fixedRects = new int[0];
+    int fixedCount = 0;
+    // Fixed elements, system bars, higher windows and the area outside this window
+    VisibilityEngine.Index occluders;
+
+    boolean dirty = true;           // must be walked again
+    long lastWalkTime = 0;          // ms, 0 until the first walk completes
+
+    WindowCache(int windowId) {
+        this.windowId = windowId;
+    }
+
+    /**
+     * Take the latest info for this window, releasing the previous one
+     * @return true if the window moved or resized. A layer change alone leaves the content as it
+     * was, only what covers it changes, which the occluders pick up.
+     */
+    boolean update(AccessibilityWindowInfo newInfo, Rect newBounds) {
+        if (info != null && info != newInfo) {
+            info.recycle();
+        }
+        info = newInfo;
+        boolean changed = !bounds.equals(newBounds);
+        bounds.set(newBounds);
+        if (newInfo != null) {
+            type = newInfo.getType();
+            layer = newInfo.getLayer();
+        }
+        return changed;
+    }
+
+    void release() {
+        if (info != null) {
+            info.recycle();
+            info = null;
+        }
+    }
+}
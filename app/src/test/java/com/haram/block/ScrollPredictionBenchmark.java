@@ -0,0 +1,120 @@
+package com.haram.block;
+
+/**
+ * JVM replay benchmark of overlay exposure during flings, last reported bounds vs ScrollPredictor.
+ * Replays decelerating flings frame by frame: the app scrolls every vsync, views report the
+ * accumulated delta at most every SCROLL_EVENT_INTERVAL, and reports reach the overlay
+ * EVENT_LATENCY_FRAMES later. Exposure is the blocked image's area left uncovered, summed over
+ * frames (pixel-frames); overdraw is the area blacked out beyond it.
+ * Pure Java, kept out of the app sources: compile it with ScrollPredictor using plain javac
+ * and run main().
+ */
+public final class ScrollPredictionBenchmark {
+    private static final int IMAGE_WIDTH = 1080;
+    private static final int IMAGE_HEIGHT = 600;
+    private static final int IMAGE_TOP = 900;
+    private static final long SCROLL_EVENT_INTERVAL_NANOS = 100_000_000L;
+    private static final int EVENT_LATENCY_FRAMES = 2;
+    // OverScroller-like exponential deceleration
+    private static final double DECAY_SECONDS = 0.35;
+    private static final double STOP_VELOCITY = 50; // px/s
+    private static final int[] REFRESH_RATES = {60, 90, 120};
+    private static final int[] FLING_VELOCITIES = {1000, 3000, 6000, 10000}; // px/s
+
+    private ScrollPredictionBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%6s %8s %7s | %14s | %14s %14s%n",
+                "Hz", "px/s", "frames", "last exposure", "pred exposure", "pred overdraw");
+        long totalLast = 0;
+        long totalPredicted = 0;
+        for (int hz : REFRESH_RATES) {
+            for (int velocity : FLING_VELOCITIES) {
+                long[] result = replay(hz, velocity);
+                totalLast += result[1];
+                totalPredicted += result[2];
+                System.out.printf("%6d %8d %7d | %14d | %14d %14d%n",
+                        hz, velocity, result[0], result[1], result[2], result[3]);
+            }
+        }
+        System.out.printf("Total exposure: last bounds %d, predicted %d pixel-frames (%.1f%% less)%n",
+                totalLast, totalPredicted,
+                totalLast > 0 ? 100.0 * (totalLast - totalPredicted) / totalLast : 0.0);
+    }
+
+    /**
+     * @return frames, exposure with last bounds, exposure with prediction, overdraw with prediction
+     */
+    private static long[] replay(int hz, int flingVelocity) {
+        long frameNanos = 1_000_000_000L / hz;
+        int frames = 0;
+        long lastExposure = 0;
+        long predictedExposure = 0;
+        long predictedOverdraw = 0;
+
+        ScrollPredictor predictor = new ScrollPredictor();
+        int maxEvents = 256;
+        long[] eventTimes = new long[maxEvents];
+        int[] eventScroll = new int[maxEvents];   // scroll position each event reported
+        int events = 0;
+        int delivered = 0;
+        int knownScroll = 0;                      // scroll the cached bounds reflect
+        int reportedScroll = 0;
+        long lastEventTime = 0;
+
+        for (int frame = 0; ; frame++) {
+            long now = frame * frameNanos;
+            double seconds = now / 1e9;
+            double velocity = flingVelocity * Math.exp(-seconds / DECAY_SECONDS);
+            int scroll = (int) Math.round(flingVelocity * DECAY_SECONDS * (1 - Math.exp(-seconds / DECAY_SECONDS)));
+
+            // Views send the accumulated delta at most once per interval
+            if (scroll != reportedScroll && now - lastEventTime >= SCROLL_EVENT_INTERVAL_NANOS && events < maxEvents) {
+                eventTimes[events] = now;
+                eventScroll[events] = scroll;
+                events++;
+                reportedScroll = scroll;
+                lastEventTime = now;
+            }
+            // Reports reach the tree stage and the overlay a few frames later
+            while (delivered < events && eventTimes[delivered] + EVENT_LATENCY_FRAMES * frameNanos <= now) {
+                predictor.addSample(eventTimes[delivered], 0, eventScroll[delivered] - knownScroll);
+                knownScroll = eventScroll[delivered];
+                delivered++;
+            }
+
+            int imageTop = IMAGE_TOP - scroll;
+            int imageBottom = imageTop + IMAGE_HEIGHT;
+
+            int lastTop = IMAGE_TOP - knownScroll;
+            lastExposure += exposure(imageTop, imageBottom, lastTop, lastTop + IMAGE_HEIGHT);
+
+            int top = lastTop;
+            int bottom = lastTop + IMAGE_HEIGHT;
+            ScrollPredictor.Motion motion = predictor.motion();
+            if (motion != null && motion.isActive(now)) {
+                int offset = motion.offsetY(now);
+                int margin = motion.marginY(now);
+                top += offset - margin;
+                bottom += offset + margin;
+            }
+            predictedExposure += exposure(imageTop, imageBottom, top, bottom);
+            predictedOverdraw += (long) IMAGE_WIDTH * ((bottom - top) - overlap(imageTop, imageBottom, top, bottom));
+            frames++;
+
+            if (velocity < STOP_VELOCITY && delivered == events) {
+                break;
+            }
+        }
+        return new long[] {frames, lastExposure, predictedExposure, predictedOverdraw};
+    }
+
+    private static long exposure(int imageTop, int imageBottom, int boxTop, int boxBottom) {
+        return (long) IMAGE_WIDTH * ((imageBottom - imageTop) - overlap(imageTop, imageBottom, boxTop, boxBottom));
+    }
+
+    private static int overlap(int top, int bottom, int otherTop, int otherBottom) {
+        return Math.max(0, Math.min(bottom, otherBottom) - Math.max(top, otherTop));
+    }
+}
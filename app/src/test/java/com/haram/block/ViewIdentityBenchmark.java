@@ -0,0 +1,101 @@
+package com.haram.block;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM allocation benchmark of one view refresh over a synthetic 2,000-node tree: the old
+ * string childPath keys in a HashMap against ViewIdentity keys in a LongObjectMap.
+ * The walks mirror the service's tree walk without the accessibility IPC.
+ * Pure Java, kept out of the app sources: compile it with ViewIdentity and LongObjectMap using
+ * plain javac and run main() on a HotSpot JVM, which counts the bytes each thread allocates.
+ */
+public final class ViewIdentityBenchmark {
+    private static final int NODES = 2000;
+    private static final int FANOUT = 4;
+    private static final int IMAGE_EVERY = 10;   // every n-th node is a target view
+    private static final int WARM_UP_RUNS = 5;
+    private static final int RUNS = 20;
+
+    private final int[] firstChild = new int[NODES];
+    private final int[] childCount = new int[NODES];
+    private final String[] viewIds = new String[NODES];
+    private final long[] idStack = new long[64];
+    private final Object marker = new Object();
+
+    private ViewIdentityBenchmark() {
+        // Complete FANOUT-ary tree in breadth-first order, some nodes carry a resource id
+        for (int i = 0; i < NODES; i++) {
+            int first = i * FANOUT + 1;
+            firstChild[i] = first;
+            childCount[i] = Math.max(0, Math.min(FANOUT, NODES - first));
+            viewIds[i] = i % 3 == 0 ? "com.example:id/item_" + (i % 17) : null;
+        }
+    }
+
+    public static void main(String[] args) {
+        ViewIdentityBenchmark bench = new ViewIdentityBenchmark();
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            bench.refreshWithPaths();
+            bench.refreshWithIdentities();
+        }
+
+        long[] paths = bench.measure(true);
+        long[] identities = bench.measure(false);
+        System.out.printf("%d-node refresh | string paths: %d bytes, %.1fus | identities: %d bytes, %.1fus%n",
+            NODES, paths[0] / RUNS, paths[1] / (RUNS * 1000.0f),
+            identities[0] / RUNS, identities[1] / (RUNS * 1000.0f));
+    }
+
+    // Returns {bytes, nanos} summed over RUNS
+    private long[] measure(boolean paths) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            if (paths) {
+                refreshWithPaths();
+            } else {
+                refreshWithIdentities();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        return new long[] {threads.getThreadAllocatedBytes(thread) - bytesBefore, nanos};
+    }
+
+    private int refreshWithPaths() {
+        Map<String, Object> views = new HashMap<>();
+        walkPaths(0, "r", views);
+        return views.size();
+    }
+
+    private void walkPaths(int node, String path, Map<String, Object> views) {
+        if (node % IMAGE_EVERY == 0) {
+            views.put(path, marker);
+        }
+        for (int i = 0; i < childCount[node]; i++) {
+            walkPaths(firstChild[node] + i, path + "-" + i, views);
+        }
+    }
+
+    private int refreshWithIdentities() {
+        LongObjectMap<Object> views = new LongObjectMap<>(NODES / IMAGE_EVERY);
+        idStack[0] = ViewIdentity.root(1, viewIds[0]);
+        walkIdentities(0, 0, views);
+        return views.size();
+    }
+
+    private void walkIdentities(int node, int depth, LongObjectMap<Object> views) {
+        if (node % IMAGE_EVERY == 0) {
+            views.put(idStack[depth], marker);
+        }
+        for (int i = 0; i < childCount[node]; i++) {
+            int child = firstChild[node] + i;
+            idStack[depth + 1] = ViewIdentity.child(idStack[depth], i, viewIds[child]);
+            walkIdentities(child, depth + 1, views);
+        }
+    }
+}
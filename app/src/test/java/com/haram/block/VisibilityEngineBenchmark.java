@@ -0,0 +1,143 @@
+package com.haram.block;
+
+import java.util.Random;
+
+/**
+ * JVM benchmark of VisibilityEngine against the previous bounding-union estimate.
+ * Pure Java, kept out of the app sources: compile it with VisibilityEngine using plain javac
+ * and run main().
+ */
+public final class VisibilityEngineBenchmark {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 2400;
+    private static final int PACKAGES = 64;
+    private static final int QUERIES = 200_000;
+
+    private VisibilityEngineBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        VisibilityEngine engine = new VisibilityEngine();
+        engine.setScreen(SCREEN_WIDTH, SCREEN_HEIGHT);
+
+        // Each package: status bar, toolbar, bottom bar plus a few floating elements
+        int[][] fixed = new int[PACKAGES][];
+        VisibilityEngine.Index[] indexes = new VisibilityEngine.Index[PACKAGES];
+        for (int p = 0; p < PACKAGES; p++) {
+            int extra = random.nextInt(6);
+            int[] rects = new int[(3 + extra) * 4];
+            set(rects, 0, 0, 0, SCREEN_WIDTH, 80);
+            set(rects, 1, 0, 80, SCREEN_WIDTH, 230);
+            set(rects, 2, 0, SCREEN_HEIGHT - 180, SCREEN_WIDTH, SCREEN_HEIGHT);
+            for (int i = 0; i < extra; i++) {
+                int l = random.nextInt(SCREEN_WIDTH - 200);
+                int t = random.nextInt(SCREEN_HEIGHT - 200);
+                set(rects, 3 + i, l, t, l + 100 + random.nextInt(400), t + 100 + random.nextInt(300));
+            }
+            fixed[p] = rects;
+            indexes[p] = engine.buildIndex(rects, rects.length / 4);
+        }
+
+        int[] views = new int[QUERIES * 5];
+        for (int q = 0; q < QUERIES; q++) {
+            int l = random.nextInt(SCREEN_WIDTH) - 200;
+            int t = random.nextInt(SCREEN_HEIGHT + 400) - 400;
+            views[q * 5] = random.nextInt(PACKAGES);
+            views[q * 5 + 1] = l;
+            views[q * 5 + 2] = t;
+            views[q * 5 + 3] = l + 200 + random.nextInt(900);
+            views[q * 5 + 4] = t + 200 + random.nextInt(900);
+        }
+
+        // Warm up both paths before timing
+        long checksum = 0;
+        for (int round = 0; round < 3; round++) {
+            checksum += runEngine(engine, indexes, views) + runBoundingUnion(fixed, views);
+        }
+
+        long start = System.nanoTime();
+        long exact = runEngine(engine, indexes, views);
+        long engineNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        long estimate = runBoundingUnion(fixed, views);
+        long unionNanos = System.nanoTime() - start;
+
+        // Per-view disagreement: how often the old estimate under-reported visibility
+        int underReported = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int p = views[q * 5];
+            int a = engine.visiblePercent(indexes[p], views[q * 5 + 1], views[q * 5 + 2], views[q * 5 + 3], views[q * 5 + 4]);
+            int b = boundingUnionPercent(fixed[p], views[q * 5 + 1], views[q * 5 + 2], views[q * 5 + 3], views[q * 5 + 4]);
+            if (b < a) {
+                underReported++;
+            }
+        }
+
+        System.out.printf("Exact engine:    %.1f ns/query, mean visibility %.2f%%%n",
+                engineNanos / (double) QUERIES, exact / (double) QUERIES);
+        System.out.printf("Bounding union:  %.1f ns/query, mean visibility %.2f%%%n",
+                unionNanos / (double) QUERIES, estimate / (double) QUERIES);
+        System.out.printf("Bounding union under-reports %d of %d views (checksum %d)%n",
+                underReported, QUERIES, checksum);
+    }
+
+    private static void set(int[] rects, int i, int l, int t, int r, int b) {
+        rects[i * 4] = l;
+        rects[i * 4 + 1] = t;
+        rects[i * 4 + 2] = r;
+        rects[i * 4 + 3] = b;
+    }
+
+    private static long runEngine(VisibilityEngine engine, VisibilityEngine.Index[] indexes, int[] views) {
+        long sum = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            sum += engine.visiblePercent(indexes[views[q * 5]],
+                    views[q * 5 + 1], views[q * 5 + 2], views[q * 5 + 3], views[q * 5 + 4]);
+        }
+        return sum;
+    }
+
+    private static long runBoundingUnion(int[][] fixed, int[] views) {
+        long sum = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            sum += boundingUnionPercent(fixed[views[q * 5]],
+                    views[q * 5 + 1], views[q * 5 + 2], views[q * 5 + 3], views[q * 5 + 4]);
+        }
+        return sum;
+    }
+
+    // The previous calculateVisibility: overlaps merged into one bounding rect
+    private static int boundingUnionPercent(int[] fixed, int left, int top, int right, int bottom) {
+        int l = Math.max(left, 0);
+        int t = Math.max(top, 0);
+        int r = Math.min(right, SCREEN_WIDTH);
+        int b = Math.min(bottom, SCREEN_HEIGHT);
+        if (l >= r || t >= b) {
+            return 0;
+        }
+        long totalArea = (long) (right - left) * (bottom - top);
+        long visibleArea = (long) (r - l) * (b - t);
+        int ul = 0, ut = 0, ur = 0, ub = 0;
+        boolean any = false;
+        for (int i = 0; i < fixed.length / 4; i++) {
+            int ol = Math.max(l, fixed[i * 4]);
+            int ot = Math.max(t, fixed[i * 4 + 1]);
+            int or = Math.min(r, fixed[i * 4 + 2]);
+            int ob = Math.min(b, fixed[i * 4 + 3]);
+            if (ol < or && ot < ob) {
+                if (!any) {
+                    ul = ol; ut = ot; ur = or; ub = ob;
+                    any = true;
+                } else {
+                    ul = Math.min(ul, ol); ut = Math.min(ut, ot);
+                    ur = Math.max(ur, or); ub = Math.max(ub, ob);
+                }
+            }
+        }
+        if (any) {
+            visibleArea = Math.max(0, visibleArea - (long) (ur - ul) * (ub - ut));
+        }
+        return totalArea > 0 ? (int) Math.max(0, Math.min(100, (visibleArea * 100) / totalArea)) : 0;
+    }
+}